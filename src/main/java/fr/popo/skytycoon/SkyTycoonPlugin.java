@@ -1,10 +1,14 @@
 package fr.popo.skytycoon;
 
 import fr.popo.skytycoon.command.SkyTycoonCommand;
+import fr.popo.skytycoon.config.DebugManager;
 import fr.popo.skytycoon.config.LangManager;
 import fr.popo.skytycoon.config.GlyphManager;
+import fr.popo.skytycoon.data.DataWriter;
+import fr.popo.skytycoon.data.MachineJournal;
 import fr.popo.skytycoon.machine.MachineListener;
 import fr.popo.skytycoon.machine.MachineManager;
+import fr.popo.skytycoon.machine.MachinePresenceListener;
 import fr.popo.skytycoon.player.IslandManager;
 import fr.popo.skytycoon.world.WorldManager;
 import org.bukkit.Bukkit;
@@ -20,6 +24,7 @@ import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
 
 public class SkyTycoonPlugin extends JavaPlugin implements Listener {
@@ -29,6 +34,9 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
     private IslandManager islandManager;
     private SkyTycoonCommand mainCommand;
     private LangManager langManager;
+    private DebugManager debugManager;
+    private DataWriter dataWriter;
+    private MachineJournal machineJournal;
 
     @Override
     public void onLoad() {
@@ -40,6 +48,18 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         // Sauvegarde les fichiers config par défaut si absent
         saveDefaultConfig();
 
+        // Logs de debug par catégorie (avant tout manager qui les utilise)
+        this.debugManager = new DebugManager(this);
+
+        // Écriture différée des données, sur son propre thread (avant les managers qui l'utilisent)
+        this.dataWriter = new DataWriter(getLogger(),
+            Math.max(0, getConfig().getLong("persistence.write-window", 30)) * 1000L);
+        // Journal des modifications de machines entre deux écritures, rejoué après un arrêt brutal
+        // (démarré par l'IslandManager une fois le journal précédent rejoué)
+        this.machineJournal = new MachineJournal(getLogger(), MachineJournal.directory(getDataFolder().toPath()),
+            getConfig().getLong("persistence.journal-commit-interval", 200));
+        dataWriter.addCheckpoint(machineJournal);
+
         // Copier toutes les schematics du JAR si absentes
         copySchematicsFromJar();
 
@@ -58,8 +78,7 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         this.machineManager = new MachineManager(this);
         // Configurer le LangManager pour les hologrammes AVANT le chargement des machines
         machineManager.setLangManager(langManager);
-        // Charger les machines persistées
-        this.machineManager.loadMachinesFromFile();
+        // Les machines persistées sont chargées avec le fichier de leur île (voir IslandManager)
 
         this.worldManager = new WorldManager(this);
 
@@ -67,9 +86,15 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         worldManager.initializeWorld().thenAccept(world -> {
             if (world != null) {
                 // Une fois le monde créé, initialiser l'IslandManager
-                this.islandManager = new IslandManager(this, worldManager);
-                // Charger les îles persistées
-                this.islandManager.loadIslandsFromFile();
+                IslandManager islands = new IslandManager(this, worldManager);
+                // Charger l'index des îles (et les îles des joueurs connectés)
+                if (!islands.loadIslandsFromFile()) {
+                    // Anciennes données non converties: le plugin s'arrête sans rien écrire
+                    getLogger().severe("Données des îles non chargées, SkyTycoon désactivé (corriger puis redémarrer)");
+                    Bukkit.getGlobalRegionScheduler().execute(this, () -> getServer().getPluginManager().disablePlugin(this));
+                    return;
+                }
+                this.islandManager = islands;
                 getLogger().info("Système d'îles initialisé avec succès!");
             } else {
                 getLogger().severe("Échec d'initialisation du monde, système d'îles désactivé");
@@ -89,6 +114,12 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         // Listeners pour les machines
         getServer().getPluginManager().registerEvents(this, this);
         getServer().getPluginManager().registerEvents(new MachineListener(this), this);
+        getServer().getPluginManager().registerEvents(new MachinePresenceListener(this), this);
+        // Joueurs déjà connectés (rechargement): enregistrer leur position depuis leur propre thread
+        for (var player : Bukkit.getOnlinePlayers()) {
+            player.getScheduler().run(this, task ->
+                machineManager.trackPlayer(player.getUniqueId(), player.getLocation()), null);
+        }
     }
 
     @Override
@@ -98,6 +129,15 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         }
         if (islandManager != null) {
             islandManager.saveIslandsToFile();
+        }
+        // Dernière écriture de tout ce qui est en attente, avec un délai maximum
+        if (dataWriter != null) {
+            dataWriter.close(Math.max(1, getConfig().getLong("persistence.shutdown-timeout", 10)), TimeUnit.SECONDS);
+        }
+        if (machineJournal != null) {
+            machineJournal.close(Math.max(1, getConfig().getLong("persistence.shutdown-timeout", 10)), TimeUnit.SECONDS);
+        }
+        if (islandManager != null) {
             islandManager.shutdown();
         }
         getLogger().info("SkyTycoon désactivé");
@@ -154,6 +194,18 @@ public class SkyTycoonPlugin extends JavaPlugin implements Listener {
         return langManager;
     }
 
+    public DataWriter getDataWriter() {
+        return dataWriter;
+    }
+
+    public MachineJournal getMachineJournal() {
+        return machineJournal;
+    }
+
+    public DebugManager getDebugManager() {
+        return debugManager;
+    }
+
     private void copySchematicsFromJar() {
         try {
             String path = "schematics/";
@@ -0,0 +1,80 @@
+package fr.popo.skytycoon.command;
+
+import fr.popo.skytycoon.SkyTycoonPlugin;
+import fr.popo.skytycoon.config.DebugCategory;
+import fr.popo.skytycoon.config.DebugManager;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Commande /st debug [catégorie|all] [off|info|verbose] - Niveaux de debug à chaud
+ */
+public class DebugCommand extends BaseCommand {
+
+    public DebugCommand(SkyTycoonPlugin plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, Command command, String label, String[] args) {
+        if (!checkPermission(sender, "skytycoon.admin.debug")) {
+            return true;
+        }
+
+        DebugManager debug = plugin.getDebugManager();
+        if (args.length < 2) {
+            sender.sendMessage("§e=== DEBUG SKYTYCOON ===");
+            for (DebugCategory category : DebugCategory.values()) {
+                sender.sendMessage("§7" + category.id() + " §f: " + debug.getLevel(category).name().toLowerCase());
+            }
+            sender.sendMessage("§7/st debug <catégorie|all> <off|info|verbose>");
+            return true;
+        }
+
+        DebugManager.Level level = DebugManager.Level.fromId(args[1]);
+        if (level == null) {
+            sender.sendMessage("§cNiveau inconnu: " + args[1]);
+            return true;
+        }
+        if (args[0].equalsIgnoreCase("all")) {
+            for (DebugCategory category : DebugCategory.values()) {
+                debug.setLevel(category, level);
+            }
+        } else {
+            DebugCategory category = DebugCategory.fromId(args[0]);
+            if (category == null) {
+                sender.sendMessage("§cCatégorie inconnue: " + args[0]);
+                return true;
+            }
+            debug.setLevel(category, level);
+        }
+        sender.sendMessage("§aDebug " + args[0].toLowerCase() + " : " + level.name().toLowerCase());
+        return true;
+    }
+
+    @Override
+    public List<String> tabComplete(CommandSender sender, Command command, String alias, String[] args) {
+        List<String> completions = new ArrayList<>();
+        if (args.length == 1) {
+            String partial = args[0].toLowerCase();
+            if ("all".startsWith(partial)) completions.add("all");
+            for (DebugCategory category : DebugCategory.values()) {
+                if (category.id().startsWith(partial)) completions.add(category.id());
+            }
+            return completions;
+        }
+        if (args.length == 2) {
+            String partial = args[1].toLowerCase();
+            for (DebugManager.Level level : DebugManager.Level.values()) {
+                String id = level.name().toLowerCase();
+                if (id.startsWith(partial)) completions.add(id);
+            }
+            return completions;
+        }
+        return Collections.emptyList();
+    }
+}
@@ -74,6 +74,10 @@ public class IslandCommand extends BaseCommand {
             player.sendMessage("§cSystème d'îles non disponible. Le monde est en cours de création...");
             return true;
         }
+        if (plugin.islands().isLoading(player.getUniqueId())) {
+            player.sendMessage("§eVotre île est en cours de chargement, réessayez dans un instant.");
+            return true;
+        }
         
         boolean first = plugin.islands().getIsland(player.getUniqueId()) == null;
         var island = plugin.islands().getOrCreate(player.getUniqueId(), first ? player : null);
@@ -112,6 +116,10 @@ public class IslandCommand extends BaseCommand {
             player.sendMessage("§cSystème d'îles non disponible.");
             return true;
         }
+        if (plugin.islands().isLoading(player.getUniqueId())) {
+            player.sendMessage("§eVotre île est en cours de chargement, réessayez dans un instant.");
+            return true;
+        }
         
         if (plugin.islands().getIsland(player.getUniqueId()) == null) {
             player.sendMessage("§cVous n'avez pas d'île à supprimer.");
@@ -137,6 +145,10 @@ public class IslandCommand extends BaseCommand {
             player.sendMessage("§cSystème d'îles non disponible.");
             return true;
         }
+        if (plugin.islands().isLoading(player.getUniqueId())) {
+            player.sendMessage("§eVotre île est en cours de chargement, réessayez dans un instant.");
+            return true;
+        }
         
         var island = plugin.islands().getIsland(player.getUniqueId());
         if (island == null) {
@@ -156,6 +168,10 @@ public class IslandCommand extends BaseCommand {
             player.sendMessage("§cSystème d'îles non disponible.");
             return true;
         }
+        if (plugin.islands().isLoading(player.getUniqueId())) {
+            player.sendMessage("§eVotre île est en cours de chargement, réessayez dans un instant.");
+            return true;
+        }
         
         var island = plugin.islands().getIsland(player.getUniqueId());
         if (island == null) {
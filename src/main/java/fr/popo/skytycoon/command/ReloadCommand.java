@@ -24,6 +24,7 @@ public class ReloadCommand extends BaseCommand {
         
         try {
             plugin.reloadConfig();
+            plugin.getDebugManager().loadConfig();
             plugin.getLangManager().reload();
             plugin.getMachineManager().setLangManager(plugin.getLangManager());
             sender.sendMessage("§aConfiguration SkyTycoon rechargée avec succès !");
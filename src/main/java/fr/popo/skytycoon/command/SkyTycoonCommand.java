@@ -20,6 +20,7 @@ public class SkyTycoonCommand extends BaseCommand {
         // Enregistrement des sous-commandes
         subCommands.put("is", new IslandCommand(plugin));
         subCommands.put("reload", new ReloadCommand(plugin));
+        subCommands.put("debug", new DebugCommand(plugin));
     }
     
     @Override
@@ -76,5 +77,6 @@ public class SkyTycoonCommand extends BaseCommand {
         sender.sendMessage("§e=== SKYTYCOON ===");
         sender.sendMessage("§7/st is §f- Gérer votre île");
         sender.sendMessage("§7/st reload §f- Recharger la configuration");
+        sender.sendMessage("§7/st debug §f- Niveaux de debug par catégorie");
     }
 }
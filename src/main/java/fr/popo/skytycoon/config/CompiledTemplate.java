@@ -0,0 +1,68 @@
+package fr.popo.skytycoon.config;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.ComponentLike;
+import net.kyori.adventure.text.TextComponent;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Template MiniMessage analysé une seule fois, avec un emplacement entier ({amount}).
+ * Le Component est construit à la compilation avec un marqueur à la place de la quantité;
+ * le rendu ne fait que remplacer le texte du marqueur en recopiant les nœuds de son chemin,
+ * sans repasser par MiniMessage.
+ */
+public final class CompiledTemplate {
+    private static final String MARKER = "\uE000amount\uE000";
+
+    private final Component component;
+    // Indices des enfants menant au marqueur depuis la racine, null si le template n'a pas de quantité
+    private final int[] path;
+
+    private CompiledTemplate(Component component, int[] path) {
+        this.component = component;
+        this.path = path;
+    }
+
+    /**
+     * Compile un template dont {amount} est le seul emplacement restant
+     * @param miniMessage instance sans post-traitement (le marqueur ne doit pas être fusionné à ses voisins)
+     */
+    public static CompiledTemplate compile(MiniMessage miniMessage, String template) {
+        Component component = miniMessage.deserialize(template.replace("{amount}", "<amount>"),
+            Placeholder.component("amount", Component.text(MARKER)));
+        List<Integer> path = new ArrayList<>();
+        if (!findMarker(component, path)) return constant(component);
+        return new CompiledTemplate(component, path.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public static CompiledTemplate constant(Component component) {
+        return new CompiledTemplate(component, null);
+    }
+
+    public Component render(int amount) {
+        if (path == null) return component;
+        return replaceAt(component, 0, Integer.toString(amount));
+    }
+
+    private Component replaceAt(Component node, int depth, String text) {
+        if (depth == path.length) return ((TextComponent) node).content(text);
+        List<ComponentLike> children = new ArrayList<>(node.children());
+        children.set(path[depth], replaceAt(node.children().get(path[depth]), depth + 1, text));
+        return node.children(children);
+    }
+
+    private static boolean findMarker(Component node, List<Integer> path) {
+        if (node instanceof TextComponent text && MARKER.equals(text.content())) return true;
+        List<Component> children = node.children();
+        for (int i = 0; i < children.size(); i++) {
+            path.add(i);
+            if (findMarker(children.get(i), path)) return true;
+            path.remove(path.size() - 1);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,24 @@
+package fr.popo.skytycoon.config;
+
+/**
+ * Catégories de logs de debug, chacune avec son propre niveau (config.yml debug.categories)
+ */
+public enum DebugCategory {
+    LIFECYCLE,   // placement, retrait, démarrage des machines
+    PRODUCTION,  // règlements de production, stockage plein
+    HOLOGRAM,    // création et mises à jour des hologrammes
+    PRESENCE,    // sommeil/réveil selon les chunks et les joueurs
+    EFFECTS,     // budget de particules et de sons par lot
+    PERSISTENCE; // sauvegarde et chargement des données
+
+    public String id() {
+        return name().toLowerCase();
+    }
+
+    public static DebugCategory fromId(String id) {
+        for (DebugCategory category : values()) {
+            if (category.id().equalsIgnoreCase(id)) return category;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,103 @@
+package fr.popo.skytycoon.config;
+
+import fr.popo.skytycoon.SkyTycoonPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Logs de debug par catégorie et par niveau, pensés pour le chemin chaud des machines.
+ * Usage: {@code if (debug.enabled(DebugCategory.PRODUCTION)) debug.log(DebugCategory.PRODUCTION, "...");}
+ * Quand une catégorie est désactivée, le test ne coûte qu'une lecture de tableau: aucun message
+ * n'est construit. Les événements très fréquents passent par sample(), limité en messages par seconde.
+ */
+public class DebugManager {
+
+    public enum Level {
+        OFF, INFO, VERBOSE;
+
+        public static Level fromId(String id) {
+            for (Level level : values()) {
+                if (level.name().equalsIgnoreCase(id)) return level;
+            }
+            return null;
+        }
+    }
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    private final SkyTycoonPlugin plugin;
+    // Niveau par catégorie (ordinal), remplacé en bloc à chaque changement
+    private volatile int[] levels = new int[DebugCategory.values().length];
+    private volatile int samplesPerSecond = 20;
+    // Fenêtre d'échantillonnage par catégorie: début de la seconde courante et messages émis
+    private final AtomicLongArray windowStart = new AtomicLongArray(DebugCategory.values().length);
+    private final AtomicLongArray windowCount = new AtomicLongArray(DebugCategory.values().length);
+
+    public DebugManager(SkyTycoonPlugin plugin) {
+        this.plugin = plugin;
+        loadConfig();
+    }
+
+    /**
+     * Charge les niveaux depuis config.yml (section debug)
+     */
+    public void loadConfig() {
+        int[] loaded = new int[DebugCategory.values().length];
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("debug.categories");
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                DebugCategory category = DebugCategory.fromId(key);
+                Level level = Level.fromId(section.getString(key, "off"));
+                if (category == null || level == null) {
+                    plugin.getLogger().warning("Niveau de debug invalide: " + key + " = " + section.getString(key));
+                    continue;
+                }
+                loaded[category.ordinal()] = level.ordinal();
+            }
+        }
+        levels = loaded;
+        samplesPerSecond = Math.max(1, plugin.getConfig().getInt("debug.sample-per-second", 20));
+    }
+
+    public boolean enabled(DebugCategory category) {
+        return levels[category.ordinal()] >= Level.INFO.ordinal();
+    }
+
+    public boolean enabled(DebugCategory category, Level level) {
+        return levels[category.ordinal()] >= level.ordinal();
+    }
+
+    /**
+     * Vrai si la catégorie est active au niveau VERBOSE et que le quota de messages
+     * de la seconde en cours n'est pas atteint
+     */
+    public boolean sample(DebugCategory category) {
+        if (levels[category.ordinal()] < Level.VERBOSE.ordinal()) return false;
+        int index = category.ordinal();
+        long now = System.nanoTime();
+        long start = windowStart.get(index);
+        if (now - start >= SECOND_NANOS && windowStart.compareAndSet(index, start, now)) {
+            windowCount.set(index, 0);
+        }
+        return windowCount.incrementAndGet(index) <= samplesPerSecond;
+    }
+
+    public void log(DebugCategory category, String message) {
+        plugin.getLogger().info("[debug/" + category.id() + "] " + message);
+    }
+
+    public Level getLevel(DebugCategory category) {
+        return Level.values()[levels[category.ordinal()]];
+    }
+
+    /**
+     * Change le niveau d'une catégorie à chaud (commande /st debug), sans toucher au fichier
+     */
+    public void setLevel(DebugCategory category, Level level) {
+        int[] updated = Arrays.copyOf(levels, levels.length);
+        updated[category.ordinal()] = level.ordinal();
+        levels = updated;
+    }
+}
@@ -1,6 +1,7 @@
 package fr.popo.skytycoon.config;
 
 import fr.popo.skytycoon.SkyTycoonPlugin;
+import fr.popo.skytycoon.machine.MachineDefinition;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.TextDecoration;
 import net.kyori.adventure.text.minimessage.MiniMessage;
@@ -9,6 +10,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Gestionnaire des messages avec support MiniMessage
@@ -17,9 +19,32 @@ public class LangManager {
     
     private final SkyTycoonPlugin plugin;
     private final MiniMessage miniMessage;
+    // Sans compaction: le marqueur de quantité des templates compilés doit rester un nœud à part
+    private final MiniMessage templateMiniMessage = MiniMessage.builder().postProcessor(component -> component).build();
     private YamlConfiguration langConfig;
     private final Map<String, String> cachedMessages = new HashMap<>();
     private GlyphManager glyphManager;
+    // Lignes d'hologramme compilées par machine et barres de progression par étape (vidées au rechargement)
+    private final Map<String, MachineTemplates> machineTemplates = new ConcurrentHashMap<>();
+    private volatile Component[] progressBars;
+
+    /**
+     * Lignes d'hologramme d'une définition, compilées à la demande pour chaque niveau
+     */
+    private static final class MachineTemplates {
+        final MachineDefinition def;
+        final Component[] names;
+        final CompiledTemplate[] contents;
+        // Niveaux au-delà d'une table générée: compilés par niveau réel ({tier_glyph} du vrai niveau)
+        final Map<Integer, Component> extraNames = new ConcurrentHashMap<>();
+        final Map<Integer, CompiledTemplate> extraContents = new ConcurrentHashMap<>();
+
+        MachineTemplates(MachineDefinition def) {
+            this.def = def;
+            this.names = new Component[def.maxTier()];
+            this.contents = new CompiledTemplate[def.maxTier()];
+        }
+    }
     
     public LangManager(SkyTycoonPlugin plugin) {
         this.plugin = plugin;
@@ -49,6 +74,7 @@ public class LangManager {
      */
     public void reload() {
         cachedMessages.clear();
+        clearTemplates();
         loadLangFile();
         plugin.getLogger().info("Messages rechargés depuis lang.yml");
     }
@@ -128,6 +154,36 @@ public class LangManager {
         }
     }
 
+    /**
+     * Nom d'hologramme d'une machine à partir de sa définition (ligne constante, compilée une fois par niveau)
+     */
+    public Component getMachineHologramName(MachineDefinition def, int tier) {
+        MachineTemplates templates = templatesFor(def);
+        int level = templateLevel(def, tier);
+        if (level > def.maxTier()) {
+            return templates.extraNames.computeIfAbsent(level, l -> compileName(def, l));
+        }
+        Component name = templates.names[level - 1];
+        if (name == null) {
+            name = compileName(def, level);
+            templates.names[level - 1] = name;
+        }
+        return name;
+    }
+
+    private Component compileName(MachineDefinition def, int level) {
+        String message = langConfig.contains(def.nameTemplateKey())
+            ? getRawMessage(def.nameTemplateKey())
+            : getRawMessage("holograms.machine.name").replace("{name}", def.label());
+        message = replaceGlyphPlaceholders(message, def.id(), null, level);
+        try {
+            return miniMessage.deserialize(message);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Erreur lors du parsing MiniMessage pour: " + def.id() + " - " + e.getMessage());
+            return Component.text(message);
+        }
+    }
+
     public Component getMachineHologramName(String machineId) {
         return getMachineHologramName(machineId, null);
     }
@@ -159,6 +215,67 @@ public class LangManager {
         }
     }
     
+    /**
+     * Contenu d'hologramme d'une machine à partir de sa définition: seul {amount} est formaté
+     * à chaque appel, le reste du template (produit, glyphes) est résolu à la compilation
+     */
+    public Component getMachineHologramContent(int amount, MachineDefinition def, int tier) {
+        MachineTemplates templates = templatesFor(def);
+        int level = templateLevel(def, tier);
+        CompiledTemplate content;
+        if (level > def.maxTier()) {
+            content = templates.extraContents.computeIfAbsent(level, l -> compileContent(def, l));
+        } else {
+            content = templates.contents[level - 1];
+            if (content == null) {
+                content = compileContent(def, level);
+                templates.contents[level - 1] = content;
+            }
+        }
+        return content.render(amount);
+    }
+
+    private CompiledTemplate compileContent(MachineDefinition def, int level) {
+        String message = langConfig.contains(def.contentTemplateKey())
+            ? getRawMessage(def.contentTemplateKey())
+            : getRawMessage("holograms.machine.content");
+        message = message.replace("{product}", def.productName());
+        message = replaceGlyphPlaceholders(message, def.id(), def.productName(), level);
+        try {
+            return CompiledTemplate.compile(templateMiniMessage, message);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Erreur lors du parsing MiniMessage pour: " + def.productName() + " - " + e.getMessage());
+            return CompiledTemplate.constant(Component.text(message.replace("{amount}", "?")));
+        }
+    }
+
+    private MachineTemplates templatesFor(MachineDefinition def) {
+        MachineTemplates templates = machineTemplates.get(def.id());
+        // Définition rechargée: on recompile
+        if (templates == null || templates.def != def) {
+            templates = new MachineTemplates(def);
+            machineTemplates.put(def.id(), templates);
+        }
+        return templates;
+    }
+
+    /**
+     * Niveau utilisé pour les templates: borné à la liste tiers de machines.yml, mais réel au-delà
+     * d'une table générée (la machine continue de suivre la formule, voir MachineDefinition)
+     */
+    private static int templateLevel(MachineDefinition def, int tier) {
+        int level = Math.max(1, tier);
+        return def.generatedTiers() ? level : Math.min(def.maxTier(), level);
+    }
+
+    /**
+     * Oublie les templates compilés (lang.yml ou glyphes modifiés)
+     */
+    public void clearTemplates() {
+        machineTemplates.clear();
+        progressBars = null;
+    }
+
     public Component getMachineHologramContent(int amount, String product) {
         return getMachineHologramContent(amount, product, null, null);
     }
@@ -181,15 +298,41 @@ public class LangManager {
      */
     public Component createProgressBar(int current, int max) {
         if (max <= 0) return Component.text("N/A");
-        int percentage = Math.min(100, (current * 100) / max);
-        int step = Math.max(1, Math.min(8, (percentage + 12) / 13)); // 0-12:1, 13-25:2, ..., 88-100:8
-        String glyph = glyphManager != null ? glyphManager.getProgressBarGlyph(step) : "|";
-        String bar = glyph;
-        String format = getRawMessage("progress_bars.format", "{bar}");
-        format = format.replace("{bar}", bar);
-        return miniMessage.deserialize(format);
+        Component[] bars = progressBars;
+        if (bars == null) {
+            // Les 8 étapes sont construites une seule fois
+            bars = new Component[9];
+            String format = getRawMessage("progress_bars.format", "{bar}");
+            for (int step = 1; step <= 8; step++) {
+                String glyph = glyphManager != null ? glyphManager.getProgressBarGlyph(step) : "|";
+                bars[step] = miniMessage.deserialize(format.replace("{bar}", glyph));
+            }
+            progressBars = bars;
+        }
+        return bars[progressStep(current, max)];
     }
     
+    /**
+     * Étape (1 à 8) de la barre de progression pour une avancée donnée
+     */
+    public static int progressStep(int current, int max) {
+        if (max <= 0) return 1;
+        int percentage = Math.min(100, (current * 100) / max);
+        return Math.max(1, Math.min(8, (percentage + 12) / 13)); // 0-12:1, 13-25:2, ..., 88-100:8
+    }
+
+    /**
+     * Plus petite avancée strictement supérieure à current qui change l'étape affichée,
+     * ou max si la barre ne changera plus avant la fin du cycle
+     */
+    public static int nextProgressStepAt(int current, int max) {
+        int step = progressStep(current, max);
+        for (int c = current + 1; c < max; c++) {
+            if (progressStep(c, max) != step) return c;
+        }
+        return max;
+    }
+
     /**
      * Message simple avec placeholders
      */
@@ -253,6 +396,7 @@ public class LangManager {
 
     public void setGlyphManager(GlyphManager glyphManager) {
         this.glyphManager = glyphManager;
+        clearTemplates();
     }
 
     public String getMachineGlyph(String machineId) {
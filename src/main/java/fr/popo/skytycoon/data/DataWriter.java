@@ -0,0 +1,231 @@
+package fr.popo.skytycoon.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Écriture différée des fichiers de données sur un thread dédié.
+ * <p>
+ * Les threads de jeu ne font que signaler une modification (request). Le premier signal ouvre
+ * une fenêtre de regroupement: à sa fin, chaque source enregistrée fournit un instantané de ses
+ * données modifiées (aucun si rien n'a changé) et chaque fichier est écrit une seule fois,
+ * dans un fichier temporaire synchronisé sur disque puis renommé atomiquement.
+ * Un fichier n'est donc jamais à moitié écrit, même si le serveur s'arrête brutalement.
+ * <p>
+ * Le même thread exécute aussi les tâches de données (chargement et libération des fichiers d'île,
+ * voir execute): elles ne se chevauchent jamais avec la préparation d'une écriture.
+ */
+public final class DataWriter {
+    /**
+     * Prévenu de chaque passage d'écriture (voir MachineJournal)
+     */
+    public interface Checkpoint {
+        /** Début du passage, avant la prise des instantanés */
+        void begin();
+        /** Tout ce que le passage devait écrire l'a été (y compris les écritures en échec des passages précédents) */
+        void written();
+    }
+
+    private final Logger logger;
+    private final long windowMillis;
+    private final List<Supplier<Collection<FileSnapshot>>> sources = new CopyOnWriteArrayList<>();
+    private final List<Checkpoint> checkpoints = new CopyOnWriteArrayList<>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Object lock = new Object();
+    private volatile boolean requested;
+    private volatile boolean closing;
+    // Instantanés dont l'écriture a échoué, réessayés au passage suivant (thread d'écriture)
+    private final Map<Path, FileSnapshot> failed = new LinkedHashMap<>();
+    private final Thread thread;
+
+    public DataWriter(Logger logger, long windowMillis) {
+        this.logger = logger;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.thread = new Thread(this::run, "SkyTycoon-DataWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Ajoute une source d'instantanés (fichiers modifiés depuis son passage précédent),
+     * appelée depuis le thread d'écriture à chaque passage
+     */
+    public void register(Supplier<Collection<FileSnapshot>> source) {
+        sources.add(source);
+    }
+
+    public void addCheckpoint(Checkpoint checkpoint) {
+        checkpoints.add(checkpoint);
+    }
+
+    /**
+     * Exécute une tâche sur le thread d'écriture, sans attendre la fenêtre de regroupement.
+     * Après l'arrêt, la tâche est exécutée sur le thread appelant.
+     */
+    public void execute(Runnable task) {
+        if (closing) {
+            runTask(task);
+            return;
+        }
+        tasks.add(task);
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Vrai si l'appelant est le thread d'écriture
+     */
+    public boolean isWriterThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Signale une modification. Très peu coûteux: appelé à chaque production de machine.
+     */
+    public void request() {
+        if (requested || closing) return;
+        synchronized (lock) {
+            if (!requested) {
+                requested = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Écrit tout ce qui reste en attente puis arrête le thread d'écriture
+     * @return false si l'écriture n'a pas fini avant le délai
+     */
+    public boolean close(long timeout, TimeUnit unit) {
+        synchronized (lock) {
+            closing = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warning("Écriture des données non terminée après " + timeout + " " + unit.name().toLowerCase());
+            return false;
+        }
+        return true;
+    }
+
+    private void run() {
+        // Heure de fin de la fenêtre en cours, 0 si aucune écriture n'est programmée
+        long deadline = 0;
+        while (true) {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                runTask(task);
+            }
+            synchronized (lock) {
+                long now = System.currentTimeMillis();
+                // Fenêtre de regroupement: les modifications suivantes partent dans la même écriture
+                if (requested && deadline == 0) deadline = now + windowMillis;
+                boolean due = deadline != 0 && (closing || now >= deadline);
+                if (!due) {
+                    if (closing && tasks.isEmpty()) return;
+                    if (tasks.isEmpty()) {
+                        try {
+                            lock.wait(deadline == 0 ? 0 : deadline - now);
+                        } catch (InterruptedException e) {
+                            closing = true;
+                        }
+                    }
+                    continue;
+                }
+                requested = false;
+                deadline = 0;
+            }
+            writePending();
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.warning("Erreur dans une tâche de données: " + e.getMessage());
+        }
+    }
+
+    private void writePending() {
+        Map<Path, FileSnapshot> pending = new LinkedHashMap<>(failed);
+        failed.clear();
+        for (Checkpoint checkpoint : checkpoints) {
+            checkpoint.begin();
+        }
+        boolean complete = true;
+        for (Supplier<Collection<FileSnapshot>> source : sources) {
+            try {
+                for (FileSnapshot snapshot : source.get()) {
+                    pending.put(snapshot.file(), snapshot);
+                }
+            } catch (RuntimeException e) {
+                logger.warning("Erreur lors de la préparation d'une sauvegarde: " + e.getMessage());
+                complete = false;
+            }
+        }
+        for (FileSnapshot snapshot : pending.values()) {
+            try {
+                if (snapshot.content() == null) {
+                    Files.deleteIfExists(snapshot.file());
+                } else {
+                    writeAtomically(snapshot.file(), snapshot.content());
+                }
+            } catch (IOException e) {
+                logger.warning("Erreur lors de l'écriture de " + snapshot.file().getFileName() + ": " + e.getMessage());
+                failed.put(snapshot.file(), snapshot);
+            }
+        }
+        if (complete && failed.isEmpty()) {
+            for (Checkpoint checkpoint : checkpoints) {
+                checkpoint.written();
+            }
+        } else if (!closing) {
+            request();
+        }
+    }
+
+    /**
+     * Remplace un fichier sans jamais laisser de version partielle: écriture dans un fichier
+     * temporaire voisin, synchronisation sur disque, puis renommage atomique
+     */
+    public static void writeAtomically(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package fr.popo.skytycoon.data;
+
+import java.nio.file.Path;
+
+/**
+ * Contenu complet d'un fichier de données à écrire, figé au moment de sa construction
+ * (content null: le fichier est supprimé)
+ */
+public record FileSnapshot(Path file, byte[] content) {}
@@ -0,0 +1,16 @@
+package fr.popo.skytycoon.data;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Enregistrement persistant d'une île, figé au moment de sa sérialisation
+ * @param storage quantité stockée par nom de matériau
+ */
+public record IslandRecord(UUID owner, String world, int centerX, int centerZ, int size,
+                           Map<String, Integer> storage) {
+
+    public IslandRecord {
+        storage = Map.copyOf(storage);
+    }
+}
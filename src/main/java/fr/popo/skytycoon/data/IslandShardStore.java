@@ -0,0 +1,163 @@
+package fr.popo.skytycoon.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fichiers de données par île: data/islands/&lt;uuid&gt;.bin contient l'île d'un joueur, son stockage
+ * et toutes ses machines; data/islands/index.bin liste seulement la position de chaque île.
+ * <pre>
+ * île:   int magic "STIS", short version, byte île présente,
+ *        [long, long propriétaire, chaîne monde, int centerX, int centerZ, int size,
+ *         short nombre de slots, puis pour chacun: chaîne matériau + int quantité],
+ *        section des machines (voir MachineStore)
+ * index: int magic "STII", short version, int nombre d'îles,
+ *        puis pour chacune: long, long propriétaire, chaîne monde, int centerX, int centerZ, int size
+ * </pre>
+ */
+public final class IslandShardStore {
+    private static final int SHARD_MAGIC = 0x53544953;
+    private static final int INDEX_MAGIC = 0x53544949;
+    private static final int VERSION = 1;
+    /** Taille minimale d'une entrée de l'index (monde vide) */
+    private static final int MIN_INDEX_ENTRY_BYTES = 30;
+
+    /**
+     * Contenu d'un fichier d'île
+     * @param island île du joueur, null s'il n'en a pas (ou plus) mais possède des machines
+     */
+    public record Shard(IslandRecord island, List<MachineRecord> machines) {}
+
+    /**
+     * Position d'une île, seule information gardée en mémoire pour les îles non chargées
+     */
+    public record IndexEntry(UUID owner, String world, int centerX, int centerZ, int size) {}
+
+    private IslandShardStore() {}
+
+    public static Path directory(Path dataFolder) {
+        return dataFolder.resolve("data").resolve("islands");
+    }
+
+    public static Path shardPath(Path dataFolder, UUID owner) {
+        return directory(dataFolder).resolve(owner + ".bin");
+    }
+
+    public static Path indexPath(Path dataFolder) {
+        return directory(dataFolder).resolve("index.bin");
+    }
+
+    public static byte[] encodeShard(IslandRecord island, Collection<MachineRecord> machines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + machines.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SHARD_MAGIC);
+            out.writeShort(VERSION);
+            out.writeBoolean(island != null);
+            if (island != null) {
+                out.writeLong(island.owner().getMostSignificantBits());
+                out.writeLong(island.owner().getLeastSignificantBits());
+                MachineStore.writeString(out, island.world());
+                out.writeInt(island.centerX());
+                out.writeInt(island.centerZ());
+                out.writeInt(island.size());
+                out.writeShort(island.storage().size());
+                for (Map.Entry<String, Integer> slot : island.storage().entrySet()) {
+                    MachineStore.writeString(out, slot.getKey());
+                    out.writeInt(slot.getValue());
+                }
+            }
+            MachineStore.writeRecords(out, machines);
+        } catch (IOException e) {
+            // Écriture en mémoire: ne peut pas échouer
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Lit un fichier d'île. Ces fichiers font quelques centaines d'octets et sont remplacés par renommage:
+     * ils sont lus en mémoire plutôt que projetés (une projection non libérée empêche le renommage sous Windows)
+     */
+    public static Shard readShard(Path file) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            checkHeader(buffer, SHARD_MAGIC, file);
+            IslandRecord island = null;
+            if (buffer.get() != 0) {
+                UUID owner = new UUID(buffer.getLong(), buffer.getLong());
+                String world = MachineStore.readString(buffer);
+                int centerX = buffer.getInt();
+                int centerZ = buffer.getInt();
+                int size = buffer.getInt();
+                int slots = buffer.getShort() & 0xFFFF;
+                Map<String, Integer> storage = new HashMap<>(slots * 2);
+                for (int s = 0; s < slots; s++) {
+                    storage.put(MachineStore.readString(buffer), buffer.getInt());
+                }
+                island = new IslandRecord(owner, world, centerX, centerZ, size, storage);
+            }
+            return new Shard(island, MachineStore.readRecords(buffer));
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("fichier " + file.getFileName() + " tronqué ou corrompu", e);
+        }
+    }
+
+    public static byte[] encodeIndex(Collection<IndexEntry> entries) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + entries.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(entries.size());
+            for (IndexEntry entry : entries) {
+                out.writeLong(entry.owner().getMostSignificantBits());
+                out.writeLong(entry.owner().getLeastSignificantBits());
+                MachineStore.writeString(out, entry.world());
+                out.writeInt(entry.centerX());
+                out.writeInt(entry.centerZ());
+                out.writeInt(entry.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<IndexEntry> readIndex(Path file) throws IOException {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            checkHeader(buffer, INDEX_MAGIC, file);
+            int count = MachineStore.readCount(buffer, MIN_INDEX_ENTRY_BYTES);
+            List<IndexEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                UUID owner = new UUID(buffer.getLong(), buffer.getLong());
+                String world = MachineStore.readString(buffer);
+                entries.add(new IndexEntry(owner, world, buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+            return entries;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("fichier " + file.getFileName() + " tronqué ou corrompu", e);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, int magic, Path file) throws IOException {
+        if (buffer.remaining() < 6 || buffer.getInt() != magic) {
+            throw new IOException("fichier " + file.getFileName() + " invalide");
+        }
+        int version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("version " + version + " de " + file.getFileName() + " non supportée");
+        }
+    }
+}
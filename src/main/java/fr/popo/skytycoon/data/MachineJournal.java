@@ -0,0 +1,445 @@
+package fr.popo.skytycoon.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des modifications de machines (pose, retrait, production, retrait d'items),
+ * ajouté en fin de fichier sur un thread dédié. Les entrées arrivées pendant un court intervalle
+ * sont écrites ensemble avec une seule synchronisation sur disque (validation groupée).
+ * <p>
+ * Chaque entrée porte les valeurs absolues de la machine (stockage, niveau...), pas une différence:
+ * la rejouer plusieurs fois donne le même résultat. Au démarrage, le journal est rejoué sur les
+ * fichiers d'île puis vidé (voir IslandManager). En marche, il est découpé en segments: un segment
+ * est supprimé dès qu'un passage du DataWriter a écrit tout ce qu'il contient (voir Checkpoint).
+ * <pre>
+ * segment: int magic "STWJ", short version, puis des entrées:
+ *          int longueur, int CRC32, puis
+ *          byte op, long, long propriétaire, chaîne monde, long position du bloc,
+ *          PLACE:    chaîne id, int niveau, long nextTick, long lastProductionTime, stockage
+ *          REMOVE:   rien
+ *          PRODUCE / WITHDRAW: long nextTick, long lastProductionTime, stockage
+ *          stockage: byte nombre de slots, puis pour chacun: chaîne matériau + int quantité
+ * </pre>
+ * Une entrée incomplète ou dont le CRC ne correspond pas (arrêt brutal pendant l'écriture)
+ * termine la lecture de son segment.
+ */
+public final class MachineJournal implements DataWriter.Checkpoint {
+    private static final int MAGIC = 0x5354574A;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".wal";
+    /** Nombre maximum d'entrées écrites par validation */
+    private static final int MAX_BATCH = 4096;
+
+    public enum Op { PLACE, REMOVE, PRODUCE, WITHDRAW }
+
+    /**
+     * Entrée du journal. Seuls les champs de l'enregistrement utiles à l'opération sont lus
+     * au rejeu (voir le format): les autres valent null ou 0.
+     */
+    public record Entry(Op op, MachineRecord record) {}
+
+    // Marqueurs traités par le thread du journal, dans l'ordre des entrées
+    private record Rotate(long segment) {}
+    private record Truncate(long upTo) {}
+    private static final Object STOP = new Object();
+
+    private final Logger logger;
+    private final Path directory;
+    private final long commitMillis;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    // Segment recevant les entrées ajoutées maintenant (côté appelants)
+    private final AtomicLong segment = new AtomicLong();
+    // Segment fermé au début du passage d'écriture en cours (thread du DataWriter)
+    private long checkpoint = -1;
+    // Segment des entrées non rejouées au démarrage (voir start): jamais supprimé avant releaseRetained
+    private volatile long retained;
+    private final Thread thread;
+    private volatile boolean started;
+    private FileChannel channel;
+
+    public MachineJournal(Logger logger, Path directory, long commitMillis) {
+        this.logger = logger;
+        this.directory = directory;
+        this.commitMillis = Math.max(0, commitMillis);
+        this.thread = new Thread(this::run, "SkyTycoon-Journal");
+        thread.setDaemon(true);
+    }
+
+    public static Path directory(Path dataFolder) {
+        return dataFolder.resolve("data").resolve("journal");
+    }
+
+    /**
+     * Ajoute une modification au journal. Ne bloque jamais: l'écriture est faite par le thread du journal.
+     * Avant start, les entrées attendent en mémoire.
+     */
+    public void append(Op op, MachineRecord record) {
+        queue.add(new Entry(op, record));
+    }
+
+    /**
+     * Lit toutes les entrées des segments présents, dans l'ordre (avant start)
+     */
+    public List<Entry> readAll() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path file : segments().values()) {
+            readSegment(file, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * Démarre l'écriture dans un nouveau segment. Les segments présents (rejoués) sont supprimés.
+     * @param unreplayed entrées qui n'ont pas pu être rejouées sur leur fichier d'île: elles sont d'abord
+     *                   réécrites seules dans un segment conservé jusqu'à releaseRetained, pour être
+     *                   rejouées au prochain démarrage si l'arrêt survient avant
+     */
+    public void start(List<Entry> unreplayed) throws IOException {
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> existing = segments();
+        long first = existing.isEmpty() ? 1 : existing.lastKey() + 1;
+        if (!unreplayed.isEmpty()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + unreplayed.size() * 64);
+            bytes.write(ByteBuffer.allocate(6).putInt(MAGIC).putShort((short) VERSION).array());
+            for (Entry entry : unreplayed) {
+                encode(bytes, entry);
+            }
+            // Écrit avant la suppression des anciens segments: aucune entrée n'est perdue en cas d'arrêt entre les deux
+            DataWriter.writeAtomically(directory.resolve(first + SUFFIX), bytes.toByteArray());
+            retained = first++;
+        }
+        for (Path file : existing.values()) {
+            Files.deleteIfExists(file);
+        }
+        segment.set(first);
+        channel = openSegment(first);
+        started = true;
+        thread.start();
+    }
+
+    /**
+     * Les entrées non rejouées au démarrage sont maintenant dans leurs fichiers d'île:
+     * leur segment sera supprimé avec les suivants
+     */
+    public void releaseRetained() {
+        retained = 0;
+    }
+
+    /**
+     * Met de côté les segments présents sans les rejouer (journal illisible): renommés en .unreplayed,
+     * ils ne sont plus lus ni supprimés et peuvent être examinés à la main
+     */
+    public void quarantine() throws IOException {
+        for (Path file : segments().values()) {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".unreplayed"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Début d'un passage du DataWriter: les entrées suivantes partent dans un nouveau segment.
+     * Toute entrée du segment fermé est antérieure aux instantanés de ce passage.
+     */
+    @Override
+    public void begin() {
+        if (!started) return;
+        checkpoint = segment.getAndIncrement();
+        queue.add(new Rotate(checkpoint + 1));
+    }
+
+    /**
+     * Passage terminé sans échec: les segments fermés jusqu'à son début sont couverts par les fichiers d'île
+     */
+    @Override
+    public void written() {
+        if (checkpoint < 0) return;
+        queue.add(new Truncate(checkpoint));
+        checkpoint = -1;
+    }
+
+    /**
+     * Écrit les entrées en attente puis arrête le thread du journal
+     */
+    public void close(long timeout, TimeUnit unit) {
+        if (!started) return;
+        queue.add(STOP);
+        try {
+            thread.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warning("Journal des machines non vidé après " + timeout + " " + unit.name().toLowerCase());
+        }
+    }
+
+    private void run() {
+        List<Object> batch = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(8192);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+                // Validation groupée: tout ce qui arrive pendant l'intervalle partage la même synchronisation
+                long deadline = System.currentTimeMillis() + commitMillis;
+                long wait;
+                while (batch.size() < MAX_BATCH && (wait = deadline - System.currentTimeMillis()) > 0) {
+                    Object next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, MAX_BATCH - batch.size());
+                }
+                queue.drainTo(batch, MAX_BATCH - batch.size());
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            for (Object item : batch) {
+                if (item instanceof Entry entry) {
+                    encode(bytes, entry);
+                    continue;
+                }
+                // Un marqueur s'applique après les entrées qui le précèdent
+                commit(bytes);
+                if (item instanceof Rotate rotate) {
+                    rotate(rotate.segment());
+                } else if (item instanceof Truncate truncate) {
+                    truncate(truncate.upTo());
+                } else if (item == STOP) {
+                    stopping = true;
+                }
+            }
+            commit(bytes);
+            batch.clear();
+        }
+        closeChannel();
+    }
+
+    private void commit(ByteArrayOutputStream bytes) {
+        if (bytes.size() == 0) return;
+        if (channel == null) {
+            logger.warning("Journal des machines indisponible, " + bytes.size() + " octets non journalisés");
+            bytes.reset();
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            logger.warning("Erreur d'écriture du journal des machines: " + e.getMessage());
+        }
+        bytes.reset();
+    }
+
+    private void rotate(long next) {
+        closeChannel();
+        try {
+            channel = openSegment(next);
+        } catch (IOException e) {
+            logger.warning("Impossible d'ouvrir le segment " + next + " du journal: " + e.getMessage());
+        }
+    }
+
+    private void truncate(long upTo) {
+        try {
+            // Le segment des entrées non rejouées au démarrage reste tant qu'elles ne sont pas écrites
+            for (Map.Entry<Long, Path> file : segments().subMap(retained, false, upTo, true).entrySet()) {
+                Files.deleteIfExists(file.getValue());
+            }
+        } catch (IOException e) {
+            logger.warning("Erreur lors du nettoyage du journal des machines: " + e.getMessage());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        channel = null;
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        FileChannel opened = FileChannel.open(directory.resolve(id + SUFFIX), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(6).putInt(MAGIC).putShort((short) VERSION).flip();
+        while (header.hasRemaining()) {
+            opened.write(header);
+        }
+        opened.force(true);
+        return opened;
+    }
+
+    private TreeMap<Long, Path> segments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return segments;
+    }
+
+    private static void encode(ByteArrayOutputStream bytes, Entry entry) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(96);
+        CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            MachineRecord record = entry.record();
+            out.writeByte(entry.op().ordinal());
+            out.writeLong(record.owner().getMostSignificantBits());
+            out.writeLong(record.owner().getLeastSignificantBits());
+            MachineStore.writeString(out, record.world());
+            out.writeLong(record.block());
+            switch (entry.op()) {
+                case PLACE -> {
+                    MachineStore.writeString(out, record.machineId());
+                    out.writeInt(record.level());
+                    out.writeLong(record.nextTick());
+                    out.writeLong(record.lastProductionTime());
+                    writeStorage(out, record.storage());
+                }
+                case PRODUCE, WITHDRAW -> {
+                    out.writeLong(record.nextTick());
+                    out.writeLong(record.lastProductionTime());
+                    writeStorage(out, record.storage());
+                }
+                case REMOVE -> {}
+            }
+            crc.update(payload.toByteArray());
+            DataOutputStream frame = new DataOutputStream(bytes);
+            frame.writeInt(payload.size());
+            frame.writeInt((int) crc.getValue());
+            payload.writeTo(frame);
+        } catch (IOException e) {
+            // Écriture en mémoire: ne peut pas échouer
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeStorage(DataOutputStream out, Map<String, Integer> storage) throws IOException {
+        out.writeByte(storage.size());
+        for (Map.Entry<String, Integer> slot : storage.entrySet()) {
+            MachineStore.writeString(out, slot.getKey());
+            out.writeInt(slot.getValue());
+        }
+    }
+
+    private static void readSegment(Path file, List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        // Segment créé juste avant l'arrêt, en-tête compris: aucune entrée
+        if (buffer.remaining() < 6) return;
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            throw new IOException("segment " + file.getFileName() + " invalide");
+        }
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) return;
+            ByteBuffer payload = buffer.slice(buffer.position(), length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expected) return;
+            buffer.position(buffer.position() + length);
+            try {
+                entries.add(decode(payload));
+            } catch (BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                return;
+            }
+        }
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        Op op = Op.values()[in.get()];
+        UUID owner = new UUID(in.getLong(), in.getLong());
+        String world = MachineStore.readString(in);
+        long block = in.getLong();
+        MachineRecord record = switch (op) {
+            case PLACE -> {
+                String machineId = MachineStore.readString(in);
+                int level = in.getInt();
+                long nextTick = in.getLong();
+                long lastProductionTime = in.getLong();
+                yield new MachineRecord(owner, machineId, world, block, level, nextTick, lastProductionTime, readStorage(in));
+            }
+            case PRODUCE, WITHDRAW -> {
+                long nextTick = in.getLong();
+                long lastProductionTime = in.getLong();
+                yield new MachineRecord(owner, null, world, block, 0, nextTick, lastProductionTime, readStorage(in));
+            }
+            case REMOVE -> new MachineRecord(owner, null, world, block, 0, 0L, 0L, Map.of());
+        };
+        return new Entry(op, record);
+    }
+
+    private static Map<String, Integer> readStorage(ByteBuffer in) {
+        int slots = in.get() & 0xFF;
+        Map<String, Integer> storage = new HashMap<>(slots * 2);
+        for (int s = 0; s < slots; s++) {
+            storage.put(MachineStore.readString(in), in.getInt());
+        }
+        return storage;
+    }
+
+    /**
+     * Rejoue des entrées sur les machines d'un fichier d'île
+     * @return les machines à jour
+     */
+    public static List<MachineRecord> replay(Collection<MachineRecord> machines, List<Entry> entries) {
+        Map<String, MachineRecord> byPosition = new LinkedHashMap<>();
+        for (MachineRecord record : machines) {
+            byPosition.put(position(record), record);
+        }
+        for (Entry entry : entries) {
+            MachineRecord change = entry.record();
+            String position = position(change);
+            MachineRecord current = byPosition.get(position);
+            switch (entry.op()) {
+                case PLACE -> byPosition.put(position, change);
+                case REMOVE -> byPosition.remove(position);
+                case PRODUCE, WITHDRAW -> {
+                    if (current != null && Objects.equals(current.owner(), change.owner())) {
+                        byPosition.put(position, new MachineRecord(current.owner(), current.machineId(), current.world(),
+                            current.block(), current.level(), change.nextTick(), change.lastProductionTime(), change.storage()));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(byPosition.values());
+    }
+
+    private static String position(MachineRecord record) {
+        return record.world() + ':' + record.block();
+    }
+}
@@ -0,0 +1,17 @@
+package fr.popo.skytycoon.data;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Enregistrement persistant d'une machine, figé au moment de sa sérialisation
+ * @param block position du bloc compactée (voir MachineKey.pack)
+ * @param storage quantité stockée par nom de matériau
+ */
+public record MachineRecord(UUID owner, String machineId, String world, long block, int level,
+                            long nextTick, long lastProductionTime, Map<String, Integer> storage) {
+
+    public MachineRecord {
+        storage = Map.copyOf(storage);
+    }
+}
@@ -0,0 +1,174 @@
+package fr.popo.skytycoon.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Format binaire versionné des machines (machines.bin), lu d'un bloc en mémoire.
+ * Les fichiers d'île reprennent la même section de machines (voir IslandShardStore).
+ * <pre>
+ * int    magic "STMB"
+ * short  version
+ * int    nombre de chaînes, puis pour chacune: short longueur + UTF-8
+ *        (ids de machine, mondes et matériaux, chacun écrit une seule fois)
+ * int    nombre de machines, puis pour chacune:
+ *        long, long  propriétaire (UUID)
+ *        short       id de machine (index de chaîne)
+ *        short       monde (index de chaîne)
+ *        long        position du bloc compactée
+ *        int         niveau
+ *        long        nextTick
+ *        long        lastProductionTime
+ *        byte        nombre de slots, puis pour chacun: short matériau (index de chaîne) + int quantité
+ * </pre>
+ */
+public final class MachineStore {
+    public static final String FILE_NAME = "machines.bin";
+    private static final int MAGIC = 0x53544D42;
+    private static final int VERSION = 1;
+    /** Taille minimale d'une machine écrite par writeRecords (stockage vide) */
+    private static final int MIN_RECORD_BYTES = 49;
+
+    private MachineStore() {}
+
+    public static byte[] encode(Collection<MachineRecord> records) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + records.size() * 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            writeRecords(out, records);
+        } catch (IOException e) {
+            // Écriture en mémoire: ne peut pas échouer
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<MachineRecord> read(Path file) throws IOException {
+        // Lu dans un tableau et non projeté: aucune projection ne reste ouverte sur le fichier,
+        // qui est renommé juste après la conversion (impossible sous Windows tant qu'elle existe)
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (buffer.remaining() < 6 || buffer.getInt() != MAGIC) {
+                throw new IOException("fichier " + file.getFileName() + " invalide");
+            }
+            int version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("version " + version + " de " + file.getFileName() + " non supportée");
+            }
+            return readRecords(buffer);
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("fichier " + file.getFileName() + " tronqué ou corrompu", e);
+        }
+    }
+
+    /**
+     * Écrit la table des chaînes puis les machines (partagé avec les fichiers d'île, voir IslandShardStore)
+     */
+    static void writeRecords(DataOutputStream out, Collection<MachineRecord> records) throws IOException {
+        // Table des chaînes: chaque id, monde ou matériau n'est écrit qu'une fois
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (MachineRecord record : records) {
+            intern(strings, record.machineId());
+            intern(strings, record.world());
+            for (String material : record.storage().keySet()) {
+                intern(strings, material);
+            }
+        }
+        out.writeInt(strings.size());
+        for (String value : strings.keySet()) {
+            writeString(out, value);
+        }
+        out.writeInt(records.size());
+        for (MachineRecord record : records) {
+            out.writeLong(record.owner().getMostSignificantBits());
+            out.writeLong(record.owner().getLeastSignificantBits());
+            out.writeShort(strings.get(record.machineId()));
+            out.writeShort(strings.get(record.world()));
+            out.writeLong(record.block());
+            out.writeInt(record.level());
+            out.writeLong(record.nextTick());
+            out.writeLong(record.lastProductionTime());
+            out.writeByte(record.storage().size());
+            for (Map.Entry<String, Integer> slot : record.storage().entrySet()) {
+                out.writeShort(strings.get(slot.getKey()));
+                out.writeInt(slot.getValue());
+            }
+        }
+    }
+
+    /**
+     * Lit la table des chaînes puis les machines écrites par writeRecords
+     */
+    static List<MachineRecord> readRecords(ByteBuffer buffer) throws IOException {
+        String[] strings = new String[readCount(buffer, 2)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        int count = readCount(buffer, MIN_RECORD_BYTES);
+        List<MachineRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            UUID owner = new UUID(buffer.getLong(), buffer.getLong());
+            String machineId = strings[buffer.getShort() & 0xFFFF];
+            String world = strings[buffer.getShort() & 0xFFFF];
+            long block = buffer.getLong();
+            int level = buffer.getInt();
+            long nextTick = buffer.getLong();
+            long lastProductionTime = buffer.getLong();
+            int slots = buffer.get() & 0xFF;
+            Map<String, Integer> storage = new HashMap<>(slots * 2);
+            for (int s = 0; s < slots; s++) {
+                storage.put(strings[buffer.getShort() & 0xFFFF], buffer.getInt());
+            }
+            records.add(new MachineRecord(owner, machineId, world, block, level, nextTick, lastProductionTime, storage));
+        }
+        return records;
+    }
+
+    /**
+     * Lit un nombre d'éléments et vérifie qu'il tient dans ce qui reste du fichier
+     * (un nombre corrompu ne doit pas provoquer une allocation énorme ou négative)
+     * @param minBytes taille minimale d'un élément
+     */
+    static int readCount(ByteBuffer buffer, int minBytes) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minBytes) {
+            throw new IOException("nombre d'éléments invalide (" + count + ")");
+        }
+        return count;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(utf8.length);
+        out.write(utf8);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] utf8 = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void intern(Map<String, Integer> strings, String value) {
+        if (strings.containsKey(value)) return;
+        if (strings.size() > 0xFFFF) {
+            throw new IllegalStateException("Trop de chaînes distinctes pour " + FILE_NAME);
+        }
+        strings.put(value, strings.size());
+    }
+}
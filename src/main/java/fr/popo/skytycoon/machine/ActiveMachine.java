@@ -2,34 +2,32 @@ package fr.popo.skytycoon.machine;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.Particle;
-import org.bukkit.Sound;
 import org.bukkit.World;
 import org.bukkit.inventory.ItemStack;
 
 import fr.popo.skytycoon.config.LangManager;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 public class ActiveMachine {
+    /** Limite de sécurité du stockage d'un produit */
+    public static final int STORAGE_CAP = 10000;
+
     private final UUID owner; // island/player owner id
     private final MachineDefinition definition;
     private final Location location; // anchor block location
-    private long nextTick; // next production tick (world time)
+    private volatile long nextTick; // next production tick (compteur interne), nextTick - intervalle = dernier règlement
     private int level = 1;
     
-    // Stockage individuel de cette machine
-    private final Map<Material, Integer> storage = new HashMap<>();
-    private long lastProductionTime = 0L; // timestamp système (ms) de la dernière production
+    // Stockage individuel de cette machine (compteurs primitifs par slot de produit)
+    private final MachineStorage storage;
+    private volatile long lastProductionTime = 0L; // timestamp système (ms) de la dernière production
 
     public ActiveMachine(UUID owner, MachineDefinition definition, Location location, long currentTick) {
         this.owner = owner;
         this.definition = definition;
         this.location = location;
+        this.storage = new MachineStorage(definition.product());
         scheduleNext(currentTick);
     }
 
@@ -37,7 +35,7 @@ public class ActiveMachine {
      * Retourne l'intervalle de production courant (en ticks)
      */
     public long getCurrentInterval() {
-        return Math.max(1, definition.baseIntervalTicks() - (level-1)*5);
+        return definition.intervalAt(level);
     }
 
     public UUID owner() { return owner; }
@@ -45,8 +43,7 @@ public class ActiveMachine {
     public Location location() { return location; }
 
     public void scheduleNext(long currentTick) {
-        long interval = Math.max(1, definition.baseIntervalTicks() - (level-1)*5);
-        this.nextTick = currentTick + interval;
+        this.nextTick = currentTick + definition.intervalAt(level);
     }
 
     public long nextTick() { return nextTick; }
@@ -62,119 +59,96 @@ public class ActiveMachine {
         this.lastProductionTime = lastProductionTime;
     }
 
-    public List<ItemStack> produce() {
-        // Animation et effets selon le type de machine
-        playMachineAnimation();
-        // Production d'items selon le type et stockage dans la machine
-        int produced = definition.baseYield() + (level - 1);
-        // Mettre à jour le timestamp de production
-        lastProductionTime = System.currentTimeMillis();
-
-        switch (definition.type()) {
-            case BASIC_MINER:
-                storage.merge(Material.COBBLESTONE, produced, Integer::sum);
-                break;
-            case WOOD_CUTTER:
-                storage.merge(Material.OAK_LOG, produced, Integer::sum);
-                break;
-            default:
-                break;
-        }
-        
-        // Retourner une liste vide car tout est stocké dans la machine maintenant
-        return new ArrayList<>();
-    }
-    
     /**
-     * Version simplifiée de produce() qui retourne true si la production a réussi
+     * Le stockage du produit principal est encore sous la limite STORAGE_CAP
      */
     public boolean canProduce() {
         // Vérifier si on peut encore stocker (limite de sécurité)
-        Material mainProduct = getMainProduct();
-        int currentAmount = getStoredAmount(mainProduct);
-        return currentAmount < 10000; // Limite de sécurité pour éviter l'overflow
+        int currentAmount = storage.getSlot(MachineStorage.MAIN_SLOT);
+        return currentAmount < STORAGE_CAP; // Limite de sécurité pour éviter l'overflow
     }
-    
+
     /**
-     * Produit et retourne true si la production a réussi
+     * Règle la production accumulée jusqu'à currentTick sans avoir tické entre-temps.
+     * Seuls (nextTick, stockage) sont conservés: le nombre de cycles écoulés suffit
+     * à calculer la production (voir produceBulk).
+     * Synchronisé entre deux règlements concurrents; les retraits ne prennent jamais ce verrou.
+     * @return le nombre de productions effectivement stockées
      */
-    public boolean produceAndCheck() {
-        if (!canProduce()) {
-            System.out.println("[DEBUG] Cannot produce - storage full for " + getMainProduct());
-            return false;
+    public synchronized int settle(long currentTick) {
+        if (currentTick < nextTick) return 0;
+        long interval = getCurrentInterval();
+        long cycles = 1 + (currentTick - nextTick) / interval;
+        nextTick += cycles * interval;
+        int produced = produceBulk(cycles);
+        if (produced > 0) {
+            lastProductionTime = System.currentTimeMillis();
         }
-        
-        System.out.println("[DEBUG] PRODUISANT MAINTENANT!");
-        
-        // Produire
-        produce();
-        
-        System.out.println("[DEBUG] Production terminée avec succès!");
-        
-        return true;
+        return produced;
+    }
+
+    /**
+     * Produit l'équivalent de plusieurs cycles en une seule opération, sans effets ni logs.
+     * Respecte exactement la limite STORAGE_CAP: une production n'a lieu que si le stock
+     * est encore sous la limite (voir canProduce).
+     * @return le nombre de productions effectivement stockées
+     */
+    public int produceBulk(long cycles) {
+        if (cycles <= 0) return 0;
+        int yield = definition.yieldAt(level);
+        if (yield <= 0) return 0;
+        // Ajout atomique plafonné: un retrait concurrent n'est jamais perdu
+        return storage.addCycles(MachineStorage.MAIN_SLOT, cycles, yield, STORAGE_CAP);
     }
     
     /**
      * Récupère des items du stockage de la machine
      */
     public ItemStack retrieveItems(Material material, int amount) {
-        int available = storage.getOrDefault(material, 0);
-        if (available <= 0) return null;
+        int taken = storage.take(material, amount);
+        if (taken <= 0) return null;
         
-        int toTake = Math.min(amount, available);
-        storage.put(material, available - toTake);
-        
-        return new ItemStack(material, toTake);
+        return new ItemStack(material, taken);
     }
     
     /**
      * Récupère tout le stockage d'un matériau
      */
     public ItemStack retrieveAllItems(Material material) {
-        int available = storage.getOrDefault(material, 0);
-        if (available <= 0) return null;
+        int taken = storage.take(material, Integer.MAX_VALUE);
+        if (taken <= 0) return null;
         
-        storage.put(material, 0);
-        return new ItemStack(material, available);
+        return new ItemStack(material, taken);
     }
     
     /**
      * Obtient la quantité stockée d'un matériau
      */
     public int getStoredAmount(Material material) {
-        return storage.getOrDefault(material, 0);
+        return storage.get(material);
     }
     
     /**
      * Obtient le matériau principal que cette machine produit
      */
     public Material getMainProduct() {
-        switch (definition.type()) {
-            case BASIC_MINER:
-                return Material.COBBLESTONE;
-            case WOOD_CUTTER:
-                return Material.OAK_LOG;
-            default:
-                return Material.STONE;
-        }
+        return definition.product();
     }
     
     /**
      * Obtient une représentation textuelle du stockage pour l'affichage
      */
     public String getStorageDisplay() {
-        Material mainProduct = getMainProduct();
-        int amount = getStoredAmount(mainProduct);
-        return "§f" + amount + " §7" + mainProduct.name().toLowerCase().replace("_", " ");
+        int amount = storage.getSlot(MachineStorage.MAIN_SLOT);
+        return "§f" + amount + " §7" + definition.productName();
     }
 
     /**
      * Obtient une représentation textuelle du stockage avec glyphs pour l'affichage en menu
      */
     public String getStorageDisplayWithGlyphs(LangManager langManager) {
-        Material mainProduct = getMainProduct();
-        int amount = getStoredAmount(mainProduct);
-        String productName = mainProduct.name().toLowerCase().replace("_", " ");
+        int amount = storage.getSlot(MachineStorage.MAIN_SLOT);
+        String productName = definition.productName();
         String glyph = langManager.getProductGlyph(productName);
 
         // Si un glyph existe, l'utiliser, sinon utiliser le nom du produit
@@ -187,61 +161,23 @@ public class ActiveMachine {
      * Obtient la quantité d'un produit spécifique (version String pour compatibilité hologramme)
      */
     public int getProductAmount(String productName) {
-        Material material = getMainProduct();
-        if (material.name().toLowerCase().replace("_", " ").equals(productName.toLowerCase())) {
-            return getStoredAmount(material);
+        if (definition.productName().equalsIgnoreCase(productName)) {
+            return storage.getSlot(MachineStorage.MAIN_SLOT);
         }
         return 0;
     }
     
     /**
-     * Joue l'animation et les effets sonores pour cette machine (optimisé pour les performances)
+     * Joue les effets de production de cette machine (effets compilés de sa définition),
+     * uniquement via l'EffectScheduler de son lot
+     * @param merged nombre de machines voisines représentées par cette rafale (voir EffectScheduler)
      */
-    private void playMachineAnimation() {
+    void playMachineAnimation(int merged) {
         World world = location.getWorld();
         if (world == null) return;
-        
-        Location effectLocation = location.clone().add(0.5, 1.0, 0.5);
-        
-        switch (definition.type()) {
-            case BASIC_MINER:
-                // Animation de minage avec particules de pierre (optimisée)
-                world.spawnParticle(Particle.BLOCK, effectLocation, 8, 
-                    0.3, 0.3, 0.3, 0.1, Material.STONE.createBlockData());
-                
-                // Particules de fumée pour l'effet industriel (réduites)
-                world.spawnParticle(Particle.SMOKE, effectLocation.clone().add(0, 0.5, 0), 3,
-                    0.2, 0.1, 0.2, 0.02);
-                
-                // Son de minage (volume réduit pour moins de spam sonore)
-                world.playSound(location, Sound.BLOCK_STONE_BREAK, 0.4f, 0.8f);
-                world.playSound(location, Sound.BLOCK_ANVIL_USE, 0.2f, 1.2f);
-                break;
-                
-            case WOOD_CUTTER:
-                // Animation de coupe de bois (optimisée)
-                world.spawnParticle(Particle.BLOCK, effectLocation, 6,
-                    0.3, 0.3, 0.3, 0.1, Material.OAK_LOG.createBlockData());
-                
-                // Particules de feuilles qui tombent (réduites)
-                world.spawnParticle(Particle.FALLING_DUST, effectLocation.clone().add(0, 1, 0), 4,
-                    0.4, 0.2, 0.4, 0.1, Material.OAK_LEAVES.createBlockData());
-                
-                // Sons de coupe (volume réduit)
-                world.playSound(location, Sound.BLOCK_WOOD_BREAK, 0.5f, 0.9f);
-                world.playSound(location, Sound.ITEM_AXE_STRIP, 0.3f, 1.1f);
-                break;
-                
-            default:
-                // Animation générique (très légère)
-                world.spawnParticle(Particle.HAPPY_VILLAGER, effectLocation, 2,
-                    0.2, 0.2, 0.2, 0.1);
-                world.playSound(location, Sound.BLOCK_NOTE_BLOCK_PLING, 0.3f, 1.0f);
-                break;
+        for (MachineEffect effect : definition.effects()) {
+            effect.play(world, location, merged);
         }
-        
-        // Effet lumineux pour montrer que la machine fonctionne (réduit)
-        world.spawnParticle(Particle.END_ROD, effectLocation, 1, 0, 0, 0, 0);
     }
 
     public int getLevel() {
@@ -252,7 +188,7 @@ public class ActiveMachine {
         this.level = level;
     }
 
-    public Map<Material, Integer> getStorage() {
+    public MachineStorage getStorage() {
         return storage;
     }
 }
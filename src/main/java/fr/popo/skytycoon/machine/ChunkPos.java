@@ -0,0 +1,20 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+
+import java.util.UUID;
+
+/**
+ * Position d'un chunk dans un monde, utilisée pour indexer machines et présence des joueurs
+ */
+public record ChunkPos(UUID world, int x, int z) {
+
+    public static ChunkPos of(Location location) {
+        return new ChunkPos(location.getWorld().getUID(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    public static ChunkPos of(Chunk chunk) {
+        return new ChunkPos(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ());
+    }
+}
@@ -0,0 +1,109 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Location;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Effets de production (particules + sons) d'un lot de machines, regroupés sur un passage de tick.
+ * Les demandes sont collectées pendant le passage puis jouées d'un coup à la fin:
+ * <ul>
+ *   <li>les machines du même type dans une même cellule (merge-radius) ne jouent qu'une seule rafale,
+ *       plus dense selon leur nombre (même coût en paquets);</li>
+ *   <li>une rafale sans joueur dans cull-radius n'est pas jouée;</li>
+ *   <li>le total de paquets envoyés (appels d'effet x joueurs proches) est plafonné par packet-budget.</li>
+ * </ul>
+ * Utilisé uniquement depuis le thread de la région du lot.
+ */
+public class EffectScheduler {
+    /**
+     * Réglages lus dans config.yml (machines.effects)
+     */
+    public record Settings(int packetBudget, double cullRadius, int mergeSize) {
+        static Settings load(ConfigurationSection section) {
+            if (section == null) return new Settings(256, 24.0, 8);
+            return new Settings(
+                Math.max(0, section.getInt("packet-budget", 256)),
+                Math.max(0.0, section.getDouble("cull-radius", 24.0)),
+                Math.max(1, section.getInt("merge-radius", 8)));
+        }
+    }
+
+    private record Cell(String machineId, int x, int y, int z) {}
+
+    private static final class Burst {
+        final ActiveMachine machine;
+        // Machines de la cellule représentées par cette rafale
+        int merged = 1;
+
+        Burst(ActiveMachine machine) {
+            this.machine = machine;
+        }
+    }
+
+    private final MachineManager manager;
+    // Réutilisés d'un passage à l'autre
+    private final Map<Cell, Burst> cells = new HashMap<>();
+    private final List<Burst> bursts = new ArrayList<>();
+
+    EffectScheduler(MachineManager manager) {
+        this.manager = manager;
+    }
+
+    /**
+     * Demande les effets de production d'une machine pour ce passage
+     */
+    void request(ActiveMachine machine) {
+        Settings settings = manager.effectSettings();
+        if (settings.packetBudget() <= 0) return;
+        Location l = machine.location();
+        int size = settings.mergeSize();
+        Cell cell = new Cell(machine.def().id(), Math.floorDiv(l.getBlockX(), size),
+            Math.floorDiv(l.getBlockY(), size), Math.floorDiv(l.getBlockZ(), size));
+        Burst burst = cells.get(cell);
+        if (burst != null) {
+            burst.merged++;
+            return;
+        }
+        burst = new Burst(machine);
+        cells.put(cell, burst);
+        bursts.add(burst);
+    }
+
+    /**
+     * Joue les rafales collectées dans la limite du budget, puis vide le passage
+     */
+    void flush() {
+        if (bursts.isEmpty()) return;
+        Settings settings = manager.effectSettings();
+        int spent = 0;
+        int culled = 0;
+        int dropped = 0;
+        for (Burst burst : bursts) {
+            Location l = burst.machine.location();
+            if (l.getWorld() == null) continue;
+            // Un paquet par effet compilé et par joueur proche
+            int effects = burst.machine.def().effects().size();
+            if (effects == 0) continue;
+            int viewers = l.getNearbyPlayers(settings.cullRadius()).size();
+            if (viewers == 0) {
+                culled++;
+                continue;
+            }
+            int cost = effects * viewers;
+            if (spent + cost > settings.packetBudget()) {
+                dropped++;
+                continue;
+            }
+            spent += cost;
+            manager.playProductionEffects(burst.machine, burst.merged);
+        }
+        manager.logEffects(bursts.size(), culled, dropped, spent);
+        cells.clear();
+        bursts.clear();
+    }
+}
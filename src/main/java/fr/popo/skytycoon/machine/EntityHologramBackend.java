@@ -0,0 +1,217 @@
+package fr.popo.skytycoon.machine;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Display.Billboard;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.TextDisplay;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hologrammes portés par des entités TextDisplay.
+ * En mode non persistant (backend virtual), l'entité n'est jamais écrite dans le chunk:
+ * elle disparaît au déchargement et le HologramManager la recrée au chargement suivant.
+ * Elle est aussi invisible par défaut: le HologramManager la montre un à un aux joueurs
+ * dont la portée de vue couvre son chunk (Player#showEntity), les autres n'en reçoivent rien.
+ * <p>
+ * Chaque entité porte dans son PersistentDataContainer la position compactée du bloc de sa machine
+ * (voir MachineKey.pack): c'est ce qui la désigne comme nôtre lors de la réconciliation d'un chunk.
+ * <p>
+ * Les affichages libérés restent dans le monde, cachés (portée de vue nulle), dans un pool par chunk:
+ * une machine posée ensuite dans le même chunk reprend l'un d'eux (de préférence celui de son bloc)
+ * au lieu de faire apparaître une nouvelle entité.
+ */
+public class EntityHologramBackend implements HologramBackend {
+    private static final float VIEW_RANGE = 50.0f;
+
+    private record Pooled(long block, TextDisplay entity) {}
+
+    private final Plugin plugin;
+    private final boolean persistent;
+    private final NamespacedKey keyHologramBlock;
+    private final int poolPerChunk;
+    // Affichages libérés par chunk (chaque chunk n'est modifié que par le thread de sa région)
+    private final Map<ChunkPos, Deque<Pooled>> pool = new ConcurrentHashMap<>();
+
+    public EntityHologramBackend(Plugin plugin, boolean persistent) {
+        this.plugin = plugin;
+        this.persistent = persistent;
+        this.keyHologramBlock = new NamespacedKey(plugin, "hologram-block");
+        this.poolPerChunk = Math.max(0, plugin.getConfig().getInt("holograms.pool-per-chunk", 4));
+    }
+
+    @Override
+    public Display create(Location machineLocation, Component text) {
+        // Position de l'hologramme au-dessus de la machine (harmonisé à 1.5 blocs)
+        Location hologramLocation = machineLocation.clone().add(0.5, 1.5, 0.5);
+        long block = MachineKey.pack(machineLocation.getBlockX(), machineLocation.getBlockY(), machineLocation.getBlockZ());
+        Pooled reused = takePooled(ChunkPos.of(machineLocation), block);
+        if (reused != null) {
+            TextDisplay entity = reused.entity();
+            if (reused.block() != block) {
+                // Même chunk, donc même région: déplacement sans nouvelle entité
+                entity.teleportAsync(hologramLocation);
+                entity.getPersistentDataContainer().set(keyHologramBlock, PersistentDataType.LONG, block);
+            }
+            entity.text(text);
+            entity.setViewRange(VIEW_RANGE);
+            return new EntityDisplay(entity);
+        }
+        TextDisplay display = machineLocation.getWorld().spawn(hologramLocation, TextDisplay.class, entity -> {
+            // Configuré avant l'ajout au monde: un seul paquet d'apparition
+            entity.setBillboard(Billboard.CENTER);
+            entity.setViewRange(VIEW_RANGE);
+            entity.setSeeThrough(false);
+            entity.setPersistent(persistent);
+            entity.setVisibleByDefault(persistent);
+            entity.getPersistentDataContainer().set(keyHologramBlock, PersistentDataType.LONG, block);
+            entity.text(text);
+        });
+        return new EntityDisplay(display);
+    }
+
+    @Override
+    public void release(Display display) {
+        if (display instanceof EntityDisplay entityDisplay && entityDisplay.isValid()) {
+            pool(entityDisplay.entity());
+        } else {
+            display.remove();
+        }
+    }
+
+    /**
+     * Cache un de nos affichages et le garde pour réutilisation (supprimé si le pool du chunk est plein)
+     */
+    public void pool(TextDisplay entity) {
+        Long block = blockOf(entity);
+        Deque<Pooled> free = pool.computeIfAbsent(ChunkPos.of(entity.getLocation()), c -> new ArrayDeque<>());
+        synchronized (free) {
+            if (block == null || free.size() >= poolPerChunk) {
+                entity.remove();
+                return;
+            }
+            entity.setViewRange(0.0f);
+            entity.text(Component.empty());
+            free.add(new Pooled(block, entity));
+        }
+    }
+
+    /**
+     * Oublie le pool d'un chunk dont les entités viennent d'être rechargées (anciennes références invalides)
+     */
+    public void resetPool(ChunkPos chunk) {
+        pool.remove(chunk);
+    }
+
+    private Pooled takePooled(ChunkPos chunk, long block) {
+        Deque<Pooled> free = pool.get(chunk);
+        if (free == null) return null;
+        synchronized (free) {
+            Pooled any = null;
+            for (Iterator<Pooled> it = free.iterator(); it.hasNext(); ) {
+                Pooled pooled = it.next();
+                if (!pooled.entity().isValid()) {
+                    it.remove();
+                    continue;
+                }
+                if (pooled.block() == block) {
+                    it.remove();
+                    return pooled;
+                }
+                if (any == null) any = pooled;
+            }
+            if (any != null) free.remove(any);
+            return any;
+        }
+    }
+
+    /**
+     * Position compactée du bloc de la machine d'un de nos affichages, null si l'entité n'est pas à nous
+     */
+    public Long blockOf(Entity entity) {
+        return entity.getPersistentDataContainer().get(keyHologramBlock, PersistentDataType.LONG);
+    }
+
+    /**
+     * Position compactée du bloc sous un affichage non marqué (versions précédentes du plugin),
+     * seulement s'il est exactement à la place d'un hologramme de machine, sinon null
+     */
+    public static Long legacyBlockOf(Location location) {
+        double x = location.getX() - 0.5;
+        double y = location.getY() - 1.5;
+        double z = location.getZ() - 0.5;
+        if (x != Math.floor(x) || y != Math.floor(y) || z != Math.floor(z)) return null;
+        return MachineKey.pack((int) x, (int) y, (int) z);
+    }
+
+    /**
+     * Reprend une entité existante (rechargée avec son chunk) comme affichage
+     */
+    public Display adopt(TextDisplay entity) {
+        // Une entité cachée dans le pool avant le déchargement redevient visible
+        entity.setViewRange(VIEW_RANGE);
+        return new EntityDisplay(entity);
+    }
+
+    @Override
+    public boolean isTransient() {
+        return !persistent;
+    }
+
+    @Override
+    public boolean isPerViewer() {
+        return !persistent;
+    }
+
+    @Override
+    public void show(org.bukkit.entity.Player player, Display display) {
+        if (display instanceof EntityDisplay entityDisplay && entityDisplay.isValid()) {
+            player.showEntity(plugin, entityDisplay.entity());
+        }
+    }
+
+    @Override
+    public void hide(org.bukkit.entity.Player player, Display display) {
+        if (display instanceof EntityDisplay entityDisplay && entityDisplay.isValid()) {
+            player.hideEntity(plugin, entityDisplay.entity());
+        }
+    }
+
+    /**
+     * Affichage adossé à une entité TextDisplay
+     */
+    public static final class EntityDisplay implements Display {
+        private final TextDisplay entity;
+
+        EntityDisplay(TextDisplay entity) {
+            this.entity = entity;
+        }
+
+        public TextDisplay entity() {
+            return entity;
+        }
+
+        @Override
+        public boolean isValid() {
+            return entity.isValid();
+        }
+
+        @Override
+        public void text(Component text) {
+            entity.text(text);
+        }
+
+        @Override
+        public void remove() {
+            entity.remove();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package fr.popo.skytycoon.machine;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+
+/**
+ * Support d'affichage des hologrammes de machines (choisi par holograms.backend dans config.yml):
+ * <ul>
+ *   <li>entity: TextDisplay classique, sauvegardé avec le chunk;</li>
+ *   <li>virtual: TextDisplay jamais sauvegardé, recréé au chargement du chunk, et envoyé
+ *       seulement aux joueurs à portée de vue (voir show/hide).</li>
+ * </ul>
+ * memory (RecordingHologramBackend) n'affiche rien et ne sert qu'aux mesures: il n'est pas documenté
+ * dans config.yml et n'est jamais à utiliser sur un serveur ouvert aux joueurs.
+ * Les appels sont faits depuis le thread de la région de la machine.
+ */
+public interface HologramBackend {
+
+    /**
+     * Un affichage créé par le support
+     */
+    interface Display {
+        boolean isValid();
+
+        void text(Component text);
+
+        void remove();
+    }
+
+    /**
+     * Affichage d'un hologramme enregistré mais pas encore rattaché (chunk non chargé)
+     */
+    Display UNBOUND = new Display() {
+        @Override
+        public boolean isValid() { return false; }
+
+        @Override
+        public void text(Component text) {}
+
+        @Override
+        public void remove() {}
+    };
+
+    /**
+     * Crée l'affichage d'une machine au-dessus de son bloc (ou en réutilise un libéré)
+     */
+    Display create(Location machineLocation, Component text);
+
+    /**
+     * Libère l'affichage d'une machine retirée. Par défaut il est supprimé.
+     */
+    default void release(Display display) {
+        display.remove();
+    }
+
+    /**
+     * Vrai si les affichages disparaissent avec leur chunk et doivent être recréés à son chargement
+     */
+    boolean isTransient();
+
+    /**
+     * Vrai si un affichage n'est envoyé qu'aux joueurs à qui il a été montré (voir show)
+     */
+    default boolean isPerViewer() {
+        return false;
+    }
+
+    /**
+     * Montre un affichage à un joueur (thread du joueur, affichage à portée de vue)
+     */
+    default void show(org.bukkit.entity.Player player, Display display) {}
+
+    /**
+     * Cache un affichage à un joueur sorti de la portée de vue
+     */
+    default void hide(org.bukkit.entity.Player player, Display display) {}
+
+    static HologramBackend fromConfig(fr.popo.skytycoon.SkyTycoonPlugin plugin) {
+        String type = plugin.getConfig().getString("holograms.backend", "entity");
+        switch (type.toLowerCase()) {
+            case "entity":
+                return new EntityHologramBackend(plugin, true);
+            case "virtual":
+                return new EntityHologramBackend(plugin, false);
+            case "memory":
+                plugin.getLogger().warning("holograms.backend memory: aucun hologramme affiché (mesures uniquement)");
+                return new RecordingHologramBackend();
+            default:
+                plugin.getLogger().warning("holograms.backend inconnu: " + type + ", entity utilisé");
+                return new EntityHologramBackend(plugin, true);
+        }
+    }
+}
@@ -1,22 +1,309 @@
 package fr.popo.skytycoon.machine;
 
+import fr.popo.skytycoon.config.DebugCategory;
+import fr.popo.skytycoon.config.DebugManager;
 import fr.popo.skytycoon.config.LangManager;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
-import org.bukkit.entity.EntityType;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.TextDisplay;
 import net.kyori.adventure.text.Component;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HologramManager {
+
+    /**
+     * Niveau de détail d'un hologramme selon la distance du joueur le plus proche
+     */
+    public enum Lod {
+        FULL, // nom, quantité et barre de progression en direct
+        MID,  // nom et quantité, rafraîchis au plus tous les mid-refresh passages
+        FAR   // nom seul, jamais rafraîchi
+    }
     
-    // Stocker les hologrammes TextDisplay par machine
-    private final Map<Location, TextDisplay> holograms = new HashMap<>();
+    // Stocker les hologrammes TextDisplay par machine (accédés depuis plusieurs régions)
+    private final Map<MachineKey, MachineHologram> holograms = new ConcurrentHashMap<>();
+    // Hologrammes par chunk et joueurs à portée: on n'envoie du texte qu'aux hologrammes visibles,
+    // au niveau de détail de la distance (suivi au chunk près, un suivi par seuil)
+    private final Map<ChunkPos, Set<MachineHologram>> hologramsByChunk = new ConcurrentHashMap<>();
+    private final PresenceTracker viewers;
+    private final PresenceTracker midViewers;
+    private final PresenceTracker fullViewers;
+    private final int midRefreshPasses;
+    private final HologramBackend backend;
+    // Support par joueur (virtual): chunk de chaque joueur et rayon de vue en chunks
+    private final Map<UUID, ChunkPos> viewerChunks = new ConcurrentHashMap<>();
+    private final int viewChunks;
     private LangManager langManager;
     private final fr.popo.skytycoon.SkyTycoonPlugin plugin;
+    private final DebugManager debug;
     
     public HologramManager(fr.popo.skytycoon.SkyTycoonPlugin plugin) {
         this.plugin = plugin;
+        this.debug = plugin.getDebugManager();
+        this.backend = HologramBackend.fromConfig(plugin);
+        // Un joueur qui se rapproche d'un chunk rafraîchit ses hologrammes au nouveau niveau de détail
+        java.util.function.BiConsumer<ChunkPos, Boolean> onArrival = (chunk, observed) -> {
+            if (observed) refreshChunk(chunk);
+        };
+        this.viewers = new PresenceTracker(plugin.getConfig().getInt("holograms.view-range", 50), onArrival);
+        this.midViewers = new PresenceTracker(plugin.getConfig().getInt("holograms.lod.mid", 32), onArrival);
+        this.fullViewers = new PresenceTracker(plugin.getConfig().getInt("holograms.lod.full", 16), onArrival);
+        this.midRefreshPasses = Math.max(1, plugin.getConfig().getInt("holograms.lod.mid-refresh", 4));
+        this.viewChunks = Math.max(0, (plugin.getConfig().getInt("holograms.view-range", 50) + 15) >> 4);
+    }
+
+    /**
+     * Met à jour la position d'un joueur pour la portée de vue des hologrammes (null pour le retirer)
+     */
+    public void updateViewer(UUID player, Location location) {
+        viewers.update(player, location);
+        midViewers.update(player, location);
+        fullViewers.update(player, location);
+        if (backend.isPerViewer()) updateVisibility(player, location);
+    }
+
+    /**
+     * Support par joueur: montre les hologrammes des chunks qui entrent dans la portée de vue du joueur
+     * et cache ceux des chunks qui en sortent (thread du joueur)
+     */
+    private void updateVisibility(UUID playerId, Location location) {
+        ChunkPos next = location != null && location.getWorld() != null ? ChunkPos.of(location) : null;
+        ChunkPos previous = next != null ? viewerChunks.put(playerId, next) : viewerChunks.remove(playerId);
+        org.bukkit.entity.Player player = Bukkit.getPlayer(playerId);
+        if (player == null || java.util.Objects.equals(previous, next)) return;
+        if (next != null) forEachEntering(next, previous, hologram -> backend.show(player, hologram.display()));
+        if (previous != null) forEachEntering(previous, next, hologram -> backend.hide(player, hologram.display()));
+    }
+
+    /**
+     * Hologrammes des chunks du carré de vue autour de center qui ne sont pas dans celui autour de other
+     */
+    private void forEachEntering(ChunkPos center, ChunkPos other, java.util.function.Consumer<MachineHologram> action) {
+        boolean overlap = other != null && other.world().equals(center.world());
+        for (int dx = -viewChunks; dx <= viewChunks; dx++) {
+            for (int dz = -viewChunks; dz <= viewChunks; dz++) {
+                int x = center.x() + dx;
+                int z = center.z() + dz;
+                if (overlap && Math.abs(x - other.x()) <= viewChunks && Math.abs(z - other.z()) <= viewChunks) continue;
+                Set<MachineHologram> inChunk = hologramsByChunk.get(new ChunkPos(center.world(), x, z));
+                if (inChunk == null) continue;
+                for (MachineHologram hologram : inChunk) {
+                    if (hologram.isValid()) action.accept(hologram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Crée l'affichage d'une machine; avec le support par joueur, il est montré aux joueurs déjà à portée
+     */
+    private HologramBackend.Display createDisplay(Location machineLocation, Component text) {
+        HologramBackend.Display display = backend.create(machineLocation, text);
+        if (!backend.isPerViewer()) return display;
+        ChunkPos chunk = ChunkPos.of(machineLocation);
+        for (Map.Entry<UUID, ChunkPos> viewer : viewerChunks.entrySet()) {
+            ChunkPos at = viewer.getValue();
+            if (!at.world().equals(chunk.world()) || Math.abs(at.x() - chunk.x()) > viewChunks
+                || Math.abs(at.z() - chunk.z()) > viewChunks) continue;
+            org.bukkit.entity.Player player = Bukkit.getPlayer(viewer.getKey());
+            if (player != null) backend.show(player, display);
+        }
+        return display;
+    }
+
+    public HologramBackend backend() {
+        return backend;
+    }
+
+    /**
+     * Chunk chargé (thread de sa région): si ses entités sont déjà là, ses hologrammes sont rattachés
+     * tout de suite, sinon à l'arrivée de ses entités (voir onEntitiesLoad)
+     */
+    public void onChunkLoad(Chunk chunk) {
+        if (!chunk.isEntitiesLoaded()) return;
+        bindChunk(ChunkPos.of(chunk), Arrays.asList(chunk.getEntities()));
+    }
+
+    /**
+     * Entités d'un chunk chargées (thread de sa région)
+     */
+    public void onEntitiesLoad(Chunk chunk, List<Entity> entities) {
+        bindChunk(ChunkPos.of(chunk), entities);
+    }
+
+    /**
+     * Rattache les hologrammes d'un chunk: les affichages existants sont repris (voir reconcile),
+     * un affichage n'est créé que pour les machines qui n'en ont retrouvé aucun
+     */
+    private void bindChunk(ChunkPos chunk, List<Entity> entities) {
+        reconcile(chunk, entities);
+        Set<MachineHologram> inChunk = hologramsByChunk.get(chunk);
+        if (inChunk == null) return;
+        int created = 0;
+        for (MachineHologram hologram : inChunk) {
+            if (hologram.isValid()) continue;
+            Component text = hologram.lastSent();
+            hologram.rebind(createDisplay(hologram.location(), text), text);
+            hologram.refresh();
+            created++;
+        }
+        if (created > 0 && debug.enabled(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Chunk " + chunk.x() + "," + chunk.z() + ": " + created + " hologrammes créés");
+        }
+    }
+
+    /**
+     * Réconcilie les TextDisplay dont les entités viennent d'être chargées avec leur chunk
+     * (thread de la région du chunk). Un affichage marqué par le support est repris par sa machine,
+     * ou remis au pool du chunk s'il fait doublon ou si sa machine n'existe plus. Un affichage non marqué
+     * n'est touché que s'il est exactement à la place de l'hologramme d'une machine (versions précédentes):
+     * les TextDisplay des autres plugins ne sont jamais supprimés.
+     */
+    private void reconcile(ChunkPos chunk, List<Entity> entities) {
+        if (!(backend instanceof EntityHologramBackend entityBackend)) return;
+        // Les références du pool datent du chargement précédent: il est reconstruit depuis les entités
+        entityBackend.resetPool(chunk);
+        int adopted = 0;
+        int released = 0;
+        for (Entity entity : entities) {
+            if (!(entity instanceof TextDisplay display)) continue;
+            Long block = entityBackend.blockOf(display);
+            boolean tagged = block != null;
+            if (!tagged) {
+                block = EntityHologramBackend.legacyBlockOf(display.getLocation());
+                if (block == null) continue;
+            }
+            MachineHologram hologram = holograms.get(new MachineKey(display.getWorld().getUID(), block));
+            if (hologram == null) {
+                // Notre affichage sans machine (machine retirée, affichage libéré): gardé pour réutilisation
+                if (tagged) {
+                    entityBackend.pool(display);
+                    released++;
+                }
+                continue;
+            }
+            if (hologram.display() instanceof EntityHologramBackend.EntityDisplay current
+                && current.entity().getUniqueId().equals(display.getUniqueId())) {
+                // Même entité rechargée: l'ancienne référence n'est plus valide
+                if (!current.isValid()) {
+                    hologram.rebind(entityBackend.adopt(display), display.text());
+                    hologram.refresh();
+                    adopted++;
+                }
+                continue;
+            }
+            if (tagged && !hologram.isValid()) {
+                hologram.rebind(entityBackend.adopt(display), display.text());
+                hologram.refresh();
+                adopted++;
+                continue;
+            }
+            if (tagged) {
+                entityBackend.pool(display);
+            } else {
+                display.remove();
+            }
+            released++;
+        }
+        if ((adopted > 0 || released > 0) && debug.enabled(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Réconciliation chunk " + chunk.x() + "," + chunk.z() + ": "
+                + adopted + " repris, " + released + " libérés");
+        }
+    }
+
+    /**
+     * Rattache les hologrammes de machines chargées dans des chunks déjà chargés
+     * (île chargée après ses chunks), sur le thread de la région de chaque chunk
+     */
+    public void bindLoadedChunks(Collection<ChunkPos> chunks) {
+        for (ChunkPos chunk : chunks) {
+            World world = Bukkit.getWorld(chunk.world());
+            if (world == null || !world.isChunkLoaded(chunk.x(), chunk.z())) continue;
+            Bukkit.getRegionScheduler().execute(plugin, world, chunk.x(), chunk.z(), () -> {
+                if (!world.isChunkLoaded(chunk.x(), chunk.z())) return;
+                Chunk loaded = world.getChunkAt(chunk.x(), chunk.z());
+                if (loaded.isEntitiesLoaded()) {
+                    bindChunk(chunk, Arrays.asList(loaded.getEntities()));
+                }
+            });
+        }
+    }
+
+    /**
+     * Niveau de détail d'un chunk, ou null si aucun joueur ne le voit
+     */
+    private Lod lodOf(ChunkPos chunk) {
+        if (fullViewers.isObserved(chunk)) return Lod.FULL;
+        if (midViewers.isObserved(chunk)) return Lod.MID;
+        if (viewers.isObserved(chunk)) return Lod.FAR;
+        return null;
+    }
+
+    /**
+     * Un joueur arrive à portée d'un chunk: ses hologrammes sont rendus au prochain passage
+     */
+    private void refreshChunk(ChunkPos chunk) {
+        Set<MachineHologram> inChunk = hologramsByChunk.get(chunk);
+        if (inChunk == null) return;
+        for (MachineHologram hologram : inChunk) {
+            hologram.refresh();
+        }
+    }
+
+    /**
+     * Rend et envoie l'état en attente d'un hologramme au niveau de détail de ses joueurs.
+     * Sans joueur à portée l'état est retenu jusqu'à l'arrivée d'un joueur.
+     * Appelé par le lot de la machine à la fin de son passage.
+     * @return true si l'envoi est reporté (détail moyen rafraîchi trop récemment): le lot le reprogramme
+     */
+    boolean flush(MachineHologram hologram, long clock) {
+        Lod lod = lodOf(hologram.chunk());
+        if (lod == null) {
+            hologram.hold();
+            // Un joueur a pu arriver entre le test et la mise en attente
+            if (viewers.isObserved(hologram.chunk())) hologram.refresh();
+            return false;
+        }
+        if (lod == Lod.MID && clock - hologram.lastSentClock() < midRefreshPasses) return true;
+        MachineHologram.State state = hologram.pending();
+        hologram.send(state != null ? render(state, lod) : null, clock);
+        return false;
+    }
+
+    /**
+     * Texte d'un état au niveau de détail donné
+     */
+    private Component render(MachineHologram.State state, Lod lod) {
+        MachineDefinition def = state.def();
+        if (langManager == null) {
+            // Fallback sur l'ancien système
+            String icon = getProductIcon(def.productName());
+            String color = getProductColor(def.productName());
+            Component name = Component.text("§6▬▬ §e" + def.displayName() + " §6▬▬");
+            if (lod == Lod.FAR) return name;
+            return name.append(Component.text("\n")).append(
+                Component.text(String.format("%s%s §f%d §7%s", color, icon, state.amount(), def.productName())));
+        }
+        Component name = langManager.getMachineHologramName(def, state.tier());
+        if (lod == Lod.FAR) return name;
+        if (state.storageFull()) {
+            return name.append(Component.text("\n")).append(langManager.getMachineStorageFullMessage());
+        }
+        Component text = name.append(Component.text("\n"))
+            .append(langManager.getMachineHologramContent(state.amount(), def, state.tier()));
+        if (lod == Lod.FULL) {
+            text = text.append(Component.text("\n")).append(langManager.createProgressBar(state.progressCurrent(), state.progressMax()));
+        }
+        return text;
     }
     
     /**
@@ -37,142 +324,138 @@ public class HologramManager {
      * Crée un hologramme pour une machine avec ID spécifique
      */
     public void createMachineHologram(Location machineLocation, String machineName, String machineId) {
+        register(machineLocation, machineName, machineId, true);
+    }
+
+    /**
+     * Enregistre l'hologramme d'une machine chargée depuis la sauvegarde sans créer d'affichage:
+     * il est rattaché au chargement de son chunk, en reprenant l'entité déjà présente s'il y en a une
+     * (voir bindLoadedChunks et onEntitiesLoad)
+     */
+    public void registerMachineHologram(ActiveMachine machine) {
+        register(machine.location(), machine.def().displayName(), machine.def().id(), false);
+    }
+
+    private void register(Location machineLocation, String machineName, String machineId, boolean bind) {
         // Si pas de LangManager ou pas d'ID, ne rien créer
         if (langManager == null || machineId == null) {
-            System.out.println("[SkyTycoon] Hologramme non créé : LangManager ou machineId manquant pour " + machineName);
+            if (debug.enabled(DebugCategory.HOLOGRAM)) {
+                debug.log(DebugCategory.HOLOGRAM, "Hologramme non créé : LangManager ou machineId manquant pour " + machineName);
+            }
             return;
         }
-        // Position de l'hologramme au-dessus de la machine (harmonisé à 1.5 blocs)
-        Location hologramLocation = machineLocation.clone().add(0.5, 1.5, 0.5);
         // Supprimer l'ancien hologramme s'il existe
         removeMachineHologram(machineLocation);
-        // Créer le TextDisplay
-        TextDisplay hologram = (TextDisplay) machineLocation.getWorld().spawnEntity(
-            hologramLocation, EntityType.TEXT_DISPLAY
-        );
-        // Configuration du TextDisplay
-        hologram.setBillboard(org.bukkit.entity.Display.Billboard.CENTER);
-        hologram.setViewRange(50.0f);
-        hologram.setSeeThrough(false);
         // Obtenir le texte formaté
         int tier = 1;
         Component nameComponent = langManager.getMachineHologramName(machineId, tier);
         Component contentComponent = langManager.getMachineStartingMessage();
         // Combiner les deux lignes
         Component fullText = nameComponent.append(Component.text("\n")).append(contentComponent);
-        hologram.text(fullText);
-        // Stocker l'hologramme
-        holograms.put(machineLocation, hologram);
-        System.out.println("[SkyTycoon] Hologramme TextDisplay créé pour " + machineName + " à " +
-            machineLocation.getBlockX() + "," + machineLocation.getBlockY() + "," + machineLocation.getBlockZ());
+        // Créer (ou reprendre du pool) l'affichage via le support configuré et le stocker
+        MachineHologram machineHologram = new MachineHologram(machineLocation,
+            bind ? createDisplay(machineLocation, fullText) : HologramBackend.UNBOUND, fullText);
+        holograms.put(MachineKey.of(machineLocation), machineHologram);
+        hologramsByChunk.computeIfAbsent(machineHologram.chunk(), c -> ConcurrentHashMap.newKeySet()).add(machineHologram);
+        if (bind && debug.enabled(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Hologramme TextDisplay créé pour " + machineName + " à " +
+                machineLocation.getBlockX() + "," + machineLocation.getBlockY() + "," + machineLocation.getBlockZ());
+        }
     }
     
     /**
-     * Met à jour le texte d'un hologramme de machine
+     * Met à jour l'état affiché d'un hologramme de machine. L'état est seulement mis en attente:
+     * il est rendu et envoyé au prochain passage du lot de la machine (voir flush).
+     * @param progressCurrent avancée du cycle en cours (ticks machine), sur progressMax
      */
-    public void updateMachineHologram(Location machineLocation, String machineName, int amount, String productName) {
-        updateMachineHologram(machineLocation, machineName, amount, productName, null);
+    public void updateMachineHologram(MachineRuntime runtime, int amount, int progressCurrent, int progressMax) {
+        ActiveMachine machine = runtime.machine();
+        submit(runtime, new MachineHologram.State(machine.def(), machine.getLevel(), amount,
+            progressCurrent, progressMax, false));
     }
     
     /**
-     * Met à jour le texte d'un hologramme de machine avec ID spécifique
+     * Affiche le message de stockage plein. Appelé une seule fois: la machine est ensuite garée
+     * et l'hologramme n'est plus réécrit jusqu'à ce qu'un retrait libère de la place.
      */
-    public void updateMachineHologram(Location machineLocation, String machineName, int amount, String productName, String machineId) {
-        TextDisplay hologram = holograms.get(machineLocation);
-        
-        if (hologram == null || !hologram.isValid()) {
-            System.out.println("[SkyTycoon] Hologramme TextDisplay introuvable pour mise à jour à " + machineLocation);
+    public void showStorageFull(MachineRuntime runtime) {
+        ActiveMachine machine = runtime.machine();
+        submit(runtime, new MachineHologram.State(machine.def(), machine.getLevel(),
+            machine.getStorage().getSlot(MachineStorage.MAIN_SLOT), 0, 0, true));
+    }
+
+    /**
+     * Met l'état en attente et place l'hologramme dans la file de flush du lot de la machine
+     * (une seule fois tant qu'il n'a pas été envoyé)
+     */
+    private void submit(MachineRuntime runtime, MachineHologram.State state) {
+        Location machineLocation = runtime.machine().location();
+        MachineHologram hologram = holograms.get(MachineKey.of(machineLocation));
+        // Un hologramme pas encore rattaché garde l'état: il est envoyé à son rattachement
+        if (hologram == null) {
+            if (debug.sample(DebugCategory.HOLOGRAM)) {
+                debug.log(DebugCategory.HOLOGRAM, "Hologramme TextDisplay introuvable pour mise à jour à " + machineLocation);
+            }
             return;
         }
-        
-        // Obtenir les composants formatés
-        Component nameComponent;
-        Component contentComponent;
-        Component progressComponent = null;
-        
-        int progressCurrent = 0;
-        int progressMax = 1;
-        if (langManager != null && machineId != null) {
-            int tier = 1;
-            if (machineName != null && machineName.matches(".*\\[T(\\d+)\\]$")) {
-                try {
-                    tier = Integer.parseInt(machineName.replaceAll(".*\\[T(\\d+)\\]$", "$1"));
-                } catch (Exception ignored) {}
-            }
-            nameComponent = langManager.getMachineHologramName(machineId, tier);
-            contentComponent = langManager.getMachineHologramContent(amount, productName, machineId, tier);
-            // Calcul du temps avant le prochain tick de production
-            ActiveMachine am = null;
-            if (plugin != null && plugin.getMachineManager() != null) {
-                am = plugin.getMachineManager().getActiveMachine(machineLocation);
-            }
-            if (am != null) {
-                long currentTick = plugin.getMachineManager().getCurrentTick(machineLocation);
-                long interval = am.getCurrentInterval();
-                long startTick = am.nextTick() - interval;
-                progressMax = (int) interval;
-                progressCurrent = (int) Math.max(0, Math.min(interval, currentTick - startTick));
-            }
-            progressComponent = langManager.createProgressBar(progressCurrent, progressMax);
-        } else {
-            // Fallback sur l'ancien système
-            String icon = getProductIcon(productName);
-            String color = getProductColor(productName);
-            nameComponent = Component.text("§6▬▬ §e" + machineName + " §6▬▬");
-            contentComponent = Component.text(String.format("%s%s §f%d §7%s", color, icon, amount, productName));
+        if (hologram.setPending(state, runtime.batch())) {
+            runtime.batch().queueHologram(hologram);
         }
-        
-        // Combiner les trois lignes
-        Component fullText = nameComponent.append(Component.text("\n")).append(contentComponent);
-        if (progressComponent != null) {
-            fullText = fullText.append(Component.text("\n")).append(progressComponent);
+        if (debug.sample(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Hologramme TextDisplay mis en attente: " + state.def().displayName() +
+                " | " + state.amount() + " " + state.def().productName());
         }
-        hologram.text(fullText);
-        
-        System.out.println("[SkyTycoon] Hologramme TextDisplay mis à jour: " + machineName + " | " + amount + " " + productName);
     }
     
+    /**
+     * Oublie l'hologramme d'une machine déchargée (île inactive) sans toucher à son affichage:
+     * l'entité reste dans son chunk et sera reprise au prochain chargement de la machine
+     */
+    public void forgetMachineHologram(Location machineLocation) {
+        MachineHologram hologram = holograms.remove(MachineKey.of(machineLocation));
+        if (hologram == null) return;
+        hologramsByChunk.computeIfPresent(hologram.chunk(), (chunk, set) -> {
+            set.remove(hologram);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
     /**
      * Supprime l'hologramme d'une machine
      */
     public void removeMachineHologram(Location machineLocation) {
-        TextDisplay hologram = holograms.remove(machineLocation);
+        MachineHologram hologram = holograms.remove(MachineKey.of(machineLocation));
+        if (hologram != null) {
+            hologramsByChunk.computeIfPresent(hologram.chunk(), (chunk, set) -> {
+                set.remove(hologram);
+                return set.isEmpty() ? null : set;
+            });
+        }
         
         if (hologram != null && hologram.isValid()) {
-            hologram.remove();
+            // Gardé caché pour la prochaine machine posée dans le chunk
+            backend.release(hologram.display());
+        }
+        if (debug.enabled(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Hologramme TextDisplay libéré à " + machineLocation);
         }
-        
-        System.out.println("[SkyTycoon] Hologramme TextDisplay supprimé à " + machineLocation);
     }
     
     /**
-     * Supprime tous les hologrammes
+     * Supprime tous les hologrammes connus. Ceux des chunks déchargés restent dans leur chunk
+     * et sont supprimés comme orphelins à son prochain chargement (voir reconcile).
      */
     public void removeAllHolograms() {
-        // Supprimer tous les TextDisplay connus
-        for (TextDisplay hologram : holograms.values()) {
+        for (MachineHologram hologram : holograms.values()) {
             if (hologram != null && hologram.isValid()) {
-                hologram.remove();
+                hologram.display().remove();
             }
         }
         holograms.clear();
-        // Supprimer tous les TextDisplay orphelins dans tous les mondes
-        for (org.bukkit.World world : org.bukkit.Bukkit.getWorlds()) {
-            for (org.bukkit.entity.Entity entity : world.getEntitiesByClass(TextDisplay.class)) {
-                boolean isManaged = false;
-                for (TextDisplay managed : holograms.values()) {
-                    if (managed.getUniqueId().equals(entity.getUniqueId())) {
-                        isManaged = true;
-                        break;
-                    }
-                }
-                if (!isManaged) {
-                    entity.remove();
-                    System.out.println("[SkyTycoon] TextDisplay orphelin supprimé en " + entity.getLocation());
-                }
-            }
+        hologramsByChunk.clear();
+        if (debug.enabled(DebugCategory.HOLOGRAM)) {
+            debug.log(DebugCategory.HOLOGRAM, "Tous les hologrammes connus supprimés");
         }
-        System.out.println("[SkyTycoon] Tous les hologrammes TextDisplay supprimés (y compris orphelins)");
     }
     
     /**
@@ -243,7 +526,7 @@ public class HologramManager {
      * Vérifie si un hologramme existe à cette position
      */
     public boolean hasHologram(Location machineLocation) {
-        TextDisplay hologram = holograms.get(machineLocation);
+        MachineHologram hologram = holograms.get(MachineKey.of(machineLocation));
         return hologram != null && hologram.isValid();
     }
     
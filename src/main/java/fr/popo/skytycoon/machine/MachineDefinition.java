@@ -2,11 +2,52 @@ package fr.popo.skytycoon.machine;
 
 import org.bukkit.Material;
 
+import java.util.List;
+
+/**
+ * Définition d'une machine, entièrement résolue au chargement de machines.yml:
+ * les chemins chauds lisent ces champs au lieu de recalculer chaînes et switchs.
+ */
 public record MachineDefinition(
         MachineType type,
         String id,
         String displayName,
         Material blockMaterial,
         long baseIntervalTicks,
-        int baseYield
-) {}
+        int baseYield,
+        Material product,          // produit principal (produces)
+        String productName,        // nom du produit en minuscules, ex: "oak log"
+        String label,              // id lisible, ex: "basic miner"
+        String nameTemplateKey,    // clés lang.yml des lignes d'hologramme propres à la machine
+        String contentTemplateKey,
+        long[] tierIntervals,      // intervalle et rendement par niveau (index 0 = niveau 1)
+        int[] tierYields,
+        boolean generatedTiers,    // table générée (pas de liste tiers): les niveaux au-delà suivent la même formule
+        List<MachineEffect> effects // effets de production compilés depuis machines.yml
+) {
+
+    public int maxTier() {
+        return tierIntervals.length;
+    }
+
+    /**
+     * Intervalle de production (en ticks machine) au niveau donné. Au-delà d'une table déclarée,
+     * le dernier niveau s'applique; au-delà d'une table générée, la formule de base continue.
+     */
+    public long intervalAt(int level) {
+        if (generatedTiers && level > tierIntervals.length) return Math.max(1, baseIntervalTicks - (level - 1) * 5L);
+        return tierIntervals[tierIndex(level)];
+    }
+
+    /**
+     * Quantité produite par cycle au niveau donné (même règle que intervalAt au-delà de la table)
+     */
+    public int yieldAt(int level) {
+        if (generatedTiers && level > tierYields.length) return baseYield + (level - 1);
+        return tierYields[tierIndex(level)];
+    }
+
+    private int tierIndex(int level) {
+        return Math.max(0, Math.min(tierIntervals.length - 1, level - 1));
+    }
+}
@@ -0,0 +1,114 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Particle;
+import org.bukkit.Registry;
+import org.bukkit.Sound;
+import org.bukkit.World;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un effet de production (particule ou son) déclaré dans machines.yml (clé effects d'une machine).
+ * Compilé une seule fois au chargement des définitions: la donnée de particule (BlockData/ItemStack)
+ * est mise en cache et le rejeu ne fait aucune allocation.
+ * <p>
+ * Particule: {@code particle, count, offset [x,y,z], spread [x,y,z], speed, block|item}.
+ * Son: {@code sound (clé minecraft, ex: block.stone.break), volume, pitch}, joué sur le bloc de la machine.
+ */
+public record MachineEffect(
+        Particle particle,
+        int count,
+        double offsetX, double offsetY, double offsetZ,
+        double spreadX, double spreadY, double spreadZ,
+        double speed,
+        Object data,
+        Sound sound,
+        float volume,
+        float pitch
+) {
+
+    /** Multiplicateur maximum des particules d'une rafale fusionnée */
+    public static final int MAX_MERGE_SCALE = 4;
+
+    /**
+     * Rejoue l'effet pour une machine (location = coin du bloc de la machine)
+     */
+    public void play(World world, Location location) {
+        play(world, location, 1);
+    }
+
+    /**
+     * Rejoue l'effet au nom de plusieurs machines voisines fusionnées en une rafale:
+     * toujours un seul paquet, mais plus de particules (plafonné à MAX_MERGE_SCALE fois)
+     */
+    public void play(World world, Location location, int merged) {
+        if (sound != null) {
+            world.playSound(location, sound, volume, pitch);
+            return;
+        }
+        int scale = Math.max(1, Math.min(MAX_MERGE_SCALE, merged));
+        world.spawnParticle(particle, location.getX() + offsetX, location.getY() + offsetY, location.getZ() + offsetZ,
+            count * scale, spreadX, spreadY, spreadZ, speed, data);
+    }
+
+    /**
+     * Compile une entrée YAML de la liste effects
+     * @throws IllegalArgumentException si l'entrée est invalide
+     */
+    public static MachineEffect compile(Map<?, ?> entry) {
+        Object soundKey = entry.get("sound");
+        if (soundKey != null) {
+            NamespacedKey key = NamespacedKey.fromString(soundKey.toString().toLowerCase());
+            Sound sound = key != null ? Registry.SOUNDS.get(key) : null;
+            if (sound == null) throw new IllegalArgumentException("son inconnu " + soundKey);
+            return new MachineEffect(null, 0, 0, 0, 0, 0, 0, 0, 0, null, sound,
+                (float) number(entry, "volume", 1.0), (float) number(entry, "pitch", 1.0));
+        }
+        Object particleName = entry.get("particle");
+        if (particleName == null) throw new IllegalArgumentException("ni particle ni sound");
+        Particle particle = Particle.valueOf(particleName.toString().toUpperCase());
+        double[] offset = vector(entry, "offset", 0.5, 1.0, 0.5);
+        double[] spread = vector(entry, "spread", 0.0, 0.0, 0.0);
+        Object data = null;
+        Class<?> dataType = particle.getDataType();
+        if (dataType == BlockData.class) {
+            data = material(entry, "block").createBlockData();
+        } else if (dataType == ItemStack.class) {
+            data = new ItemStack(material(entry, "item"));
+        } else if (dataType != Void.class) {
+            throw new IllegalArgumentException("particule " + particle + " non supportée (donnée " + dataType.getSimpleName() + ")");
+        }
+        return new MachineEffect(particle, (int) number(entry, "count", 1),
+            offset[0], offset[1], offset[2], spread[0], spread[1], spread[2],
+            number(entry, "speed", 0.0), data, null, 0f, 0f);
+    }
+
+    private static double number(Map<?, ?> entry, String key, double def) {
+        Object value = entry.get(key);
+        return value instanceof Number n ? n.doubleValue() : def;
+    }
+
+    private static double[] vector(Map<?, ?> entry, String key, double x, double y, double z) {
+        if (!(entry.get(key) instanceof List<?> list)) return new double[]{x, y, z};
+        if (list.size() != 3) throw new IllegalArgumentException(key + " doit contenir 3 valeurs");
+        double[] result = new double[3];
+        for (int i = 0; i < 3; i++) {
+            if (!(list.get(i) instanceof Number n)) throw new IllegalArgumentException(key + " doit contenir des nombres");
+            result[i] = n.doubleValue();
+        }
+        return result;
+    }
+
+    private static Material material(Map<?, ?> entry, String key) {
+        Object name = entry.get(key);
+        Material material = name != null ? Material.matchMaterial(name.toString()) : null;
+        if (material == null) throw new IllegalArgumentException(key + " invalide: " + name);
+        return material;
+    }
+}
@@ -0,0 +1,107 @@
+package fr.popo.skytycoon.machine;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hologramme d'une machine avec son état en attente.
+ * Les mises à jour ne font que remplacer l'état en attente et marquer l'hologramme "sale";
+ * le texte n'est rendu et envoyé qu'au flush (une fois par passage du lot de la machine),
+ * au niveau de détail de la distance des joueurs, et seulement s'il diffère du dernier texte envoyé.
+ */
+public class MachineHologram {
+
+    /**
+     * Dernier état connu de la machine, rendu au flush
+     */
+    public record State(MachineDefinition def, int tier, int amount, int progressCurrent, int progressMax,
+                        boolean storageFull) {}
+
+    private final Location location;
+    private final ChunkPos chunk;
+    // Affichage du support courant, remplacé si le support le recrée (chunk rechargé)
+    private volatile HologramBackend.Display display;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private volatile State pending;
+    // Lot qui enverra l'état en attente (aussi quand un joueur arrive à portée)
+    private volatile MachineTickBatch batch;
+    // Dernier texte réellement envoyé et horloge du lot à cet envoi (thread de la région)
+    private Component lastSent;
+    private long lastSentClock = Long.MIN_VALUE;
+
+    MachineHologram(Location location, HologramBackend.Display display, Component initial) {
+        this.location = location;
+        this.chunk = ChunkPos.of(location);
+        this.display = display;
+        this.lastSent = initial;
+    }
+
+    public Location location() { return location; }
+
+    public HologramBackend.Display display() { return display; }
+
+    Component lastSent() { return lastSent; }
+
+    /**
+     * Rattache un nouvel affichage portant déjà le texte donné
+     */
+    void rebind(HologramBackend.Display display, Component text) {
+        this.display = display;
+        this.lastSent = text;
+    }
+
+    public ChunkPos chunk() { return chunk; }
+
+    MachineTickBatch batch() { return batch; }
+
+    State pending() { return pending; }
+
+    long lastSentClock() { return lastSentClock; }
+
+    public boolean isValid() {
+        return display.isValid();
+    }
+
+    /**
+     * Remplace l'état en attente
+     * @return true si l'hologramme vient de devenir sale (il faut le mettre en file de flush)
+     */
+    boolean setPending(State state, MachineTickBatch batch) {
+        this.batch = batch;
+        pending = state;
+        return dirty.compareAndSet(false, true);
+    }
+
+    /**
+     * Retient l'état en attente: personne ne peut voir l'hologramme
+     */
+    void hold() {
+        dirty.set(false);
+    }
+
+    /**
+     * Remet l'hologramme dans la file de flush de son lot (arrivée d'un joueur, changement de détail)
+     */
+    void refresh() {
+        MachineTickBatch target = batch;
+        if (pending != null && target != null && dirty.compareAndSet(false, true)) {
+            target.queueHologram(this);
+        }
+    }
+
+    /**
+     * Envoie un texte rendu depuis l'état en attente s'il a changé depuis le dernier envoi
+     * @return true si text() a été appelé
+     */
+    boolean send(Component text, long clock) {
+        dirty.set(false);
+        HologramBackend.Display current = display;
+        if (text == null || text.equals(lastSent) || !current.isValid()) return false;
+        current.text(text);
+        lastSent = text;
+        lastSentClock = clock;
+        return true;
+    }
+}
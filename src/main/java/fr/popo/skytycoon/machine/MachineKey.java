@@ -0,0 +1,40 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Location;
+
+import java.util.UUID;
+
+/**
+ * Clé d'index d'une machine: monde + position de bloc compactée dans un long.
+ * Bien moins coûteuse à hacher qu'une Location (pas de doubles ni de référence au monde).
+ */
+public record MachineKey(UUID world, long block) {
+
+    public static MachineKey of(Location location) {
+        return new MachineKey(location.getWorld().getUID(),
+            pack(location.getBlockX(), location.getBlockY(), location.getBlockZ()));
+    }
+
+    /**
+     * Compacte une position de bloc: x et z sur 26 bits, y sur 12 bits
+     */
+    public static long pack(int x, int y, int z) {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | (y & 0xFFFL);
+    }
+
+    public static int unpackX(long block) {
+        return (int) (block >> 38);
+    }
+
+    public static int unpackY(long block) {
+        return (int) (block << 52 >> 52);
+    }
+
+    public static int unpackZ(long block) {
+        return (int) (block << 26 >> 38);
+    }
+
+    public int x() { return unpackX(block); }
+    public int y() { return unpackY(block); }
+    public int z() { return unpackZ(block); }
+}
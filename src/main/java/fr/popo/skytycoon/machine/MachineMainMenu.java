@@ -27,7 +27,7 @@ public class MachineMainMenu {
         this.player = player;
         this.machine = machine;
         // Utilise le nom dynamique depuis lang.yml (machine_names.<id>.name)
-        this.inventory = Bukkit.createInventory(null, 27, lang.getMachineHologramName(machine.def().id(), machine.getLevel()));
+        this.inventory = Bukkit.createInventory(null, 27, lang.getMachineHologramName(machine.def(), machine.getLevel()));
         setupMenu();
     }
 
@@ -1,12 +1,17 @@
 package fr.popo.skytycoon.machine;
 
 import fr.popo.skytycoon.SkyTycoonPlugin;
+import fr.popo.skytycoon.config.DebugCategory;
+import fr.popo.skytycoon.config.DebugManager;
 import fr.popo.skytycoon.config.LangManager;
+import fr.popo.skytycoon.data.DataWriter;
+import fr.popo.skytycoon.data.MachineJournal;
+import fr.popo.skytycoon.data.MachineRecord;
+import fr.popo.skytycoon.data.MachineStore;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
-import org.bukkit.Particle;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.inventory.ItemStack;
@@ -20,29 +25,48 @@ import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Charge les définitions depuis config et gère les instances actives.
- * Pas de tâche globale synchrone: on schedule par région via Folia.
+ * Pas de tâche globale synchrone: on schedule par section de région via Folia (voir MachineTickBatch).
  */
 public class MachineManager {
     private final SkyTycoonPlugin plugin;
+    /** Nombre de niveaux générés quand une machine ne déclare pas sa table tiers */
+    private static final int DEFAULT_TIERS = 10;
+
     private final Map<String, MachineDefinition> definitions = new HashMap<>();
-    private final Map<Location, ActiveMachine> active = new ConcurrentHashMap<>();
-    private final Map<Location, io.papermc.paper.threadedregions.scheduler.ScheduledTask> machineTasks = new ConcurrentHashMap<>();
+    // Index secondaires construits au chargement (type et bloc vers définition)
+    private final Map<MachineType, MachineDefinition> definitionsByType = new EnumMap<>(MachineType.class);
+    private final Map<Material, MachineDefinition> definitionsByBlock = new EnumMap<>(Material.class);
+    // Index unique des machines actives (monde + position compactée) vers leur état d'exécution
+    private final Map<MachineKey, MachineRuntime> runtimes = new ConcurrentHashMap<>();
+    // Une tâche par section de région, partagée par toutes les machines de la section
+    private final Map<MachineTickBatch.Key, MachineTickBatch> batches = new ConcurrentHashMap<>();
+    // Machines par chunk, pour les endormir/réveiller au (dé)chargement et selon la présence des joueurs
+    private final Map<ChunkPos, Set<MachineRuntime>> machinesByChunk = new ConcurrentHashMap<>();
+    private final PresenceTracker presence;
     private final HologramManager hologramManager;
+    private final DebugManager debug;
+    private volatile EffectScheduler.Settings effectSettings;
+    // Machines par propriétaire: un fichier d'île regroupe toutes les machines d'un joueur
+    private final Map<UUID, Set<MachineKey>> machinesByOwner = new ConcurrentHashMap<>();
+    // Persistance: dernier enregistrement sérialisé de chaque machine, et machines modifiées depuis
+    // le dernier instantané, par propriétaire (seules celles-ci sont resérialisées, voir recordsOf)
+    private final Map<UUID, Map<MachineKey, MachineRecord>> recordsByOwner = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<MachineKey>> dirtyByOwner = new ConcurrentHashMap<>();
+    private final DataWriter writer;
+    private final MachineJournal journal;
 
     private final NamespacedKey keyMachineId;
-    
-    // Compteur interne pour remplacer le temps du monde qui peut être bloqué
-    private final Map<Location, Long> machineTickCounters = new ConcurrentHashMap<>();
-
-    // Pour éviter les updates inutiles d'hologramme
-    private final Map<Location, Integer> lastDisplayedAmount = new ConcurrentHashMap<>();
-    private final Map<Location, Integer> lastDisplayedProgress = new ConcurrentHashMap<>();
-    private final Map<Location, String> lastDisplayedBar = new ConcurrentHashMap<>();
 
     public MachineManager(SkyTycoonPlugin plugin) {
         this.plugin = plugin;
         this.keyMachineId = new NamespacedKey(plugin, "machine-id");
+        this.debug = plugin.getDebugManager();
+        this.writer = plugin.getDataWriter();
+        this.journal = plugin.getMachineJournal();
+        this.effectSettings = EffectScheduler.Settings.load(plugin.getConfig().getConfigurationSection("machines.effects"));
         this.hologramManager = new HologramManager(plugin);
+        this.presence = new PresenceTracker(plugin.getConfig().getInt("machines.active-radius", 50),
+            (chunk, observed) -> refreshPresence(chunk, null));
         loadDefinitions();
     }
     
@@ -53,8 +77,36 @@ public class MachineManager {
         hologramManager.setLangManager(langManager);
     }
 
+    SkyTycoonPlugin plugin() {
+        return plugin;
+    }
+
+    public PresenceTracker presence() {
+        return presence;
+    }
+
+    HologramManager hologramManager() {
+        return hologramManager;
+    }
+
+    /**
+     * Met à jour la position d'un joueur (sommeil des machines et portée de vue des hologrammes),
+     * null pour le retirer
+     */
+    public void trackPlayer(UUID player, Location location) {
+        presence.update(player, location);
+        hologramManager.updateViewer(player, location);
+    }
+
+    EffectScheduler.Settings effectSettings() {
+        return effectSettings;
+    }
+
     public void reload() {
+        effectSettings = EffectScheduler.Settings.load(plugin.getConfig().getConfigurationSection("machines.effects"));
         definitions.clear();
+        definitionsByType.clear();
+        definitionsByBlock.clear();
         loadDefinitions();
     }
 
@@ -63,7 +115,13 @@ public class MachineManager {
         if(!file.exists()) {
             plugin.saveResource("machines.yml", false);
         }
-    YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        // Les valeurs absentes du fichier du serveur (ex: effects) viennent de machines.yml du plugin
+        java.io.InputStream defaults = plugin.getResource("machines.yml");
+        if (defaults != null) {
+            yaml.setDefaults(YamlConfiguration.loadConfiguration(
+                new java.io.InputStreamReader(defaults, java.nio.charset.StandardCharsets.UTF_8)));
+        }
         ConfigurationSection root = yaml.getConfigurationSection("machines");
         if(root == null) {
             plugin.getLogger().warning("Aucune section machines trouvée dans machines.yml");
@@ -79,116 +137,353 @@ public class MachineManager {
                 long interval = s.getLong("base-interval", 40L);
                 int yield = s.getInt("base-yield", 1);
                 if(block == null) block = Material.STONE;
-                MachineDefinition def = new MachineDefinition(type, id, name, block, interval, yield);
+                Material product = Material.matchMaterial(s.getString("produces", ""));
+                if (product == null) {
+                    plugin.getLogger().warning("Produit invalide pour la machine " + id + ", STONE utilisé");
+                    product = Material.STONE;
+                }
+                // Table des niveaux: déclarée (tiers) ou générée depuis les valeurs de base
+                List<Map<?, ?>> tiers = s.getMapList("tiers");
+                int tierCount = tiers.isEmpty() ? DEFAULT_TIERS : tiers.size();
+                long[] tierIntervals = new long[tierCount];
+                int[] tierYields = new int[tierCount];
+                for (int t = 0; t < tierCount; t++) {
+                    tierIntervals[t] = Math.max(1, interval - t * 5L);
+                    tierYields[t] = yield + t;
+                    if (!tiers.isEmpty()) {
+                        Map<?, ?> tier = tiers.get(t);
+                        if (tier.get("interval") instanceof Number n) tierIntervals[t] = Math.max(1, n.longValue());
+                        if (tier.get("yield") instanceof Number n) tierYields[t] = n.intValue();
+                    }
+                }
+                MachineDefinition def = new MachineDefinition(type, id, name, block, interval, yield,
+                    product, product.name().toLowerCase().replace("_", " "), id.replace("_", " "),
+                    "machine_names." + id + ".name", "machine_names." + id + ".content",
+                    tierIntervals, tierYields, tiers.isEmpty(), compileEffects(id, s.getMapList("effects")));
                 definitions.put(id, def);
+                definitionsByType.putIfAbsent(type, def);
+                definitionsByBlock.putIfAbsent(block, def);
             } catch (Exception ex) {
                 plugin.getLogger().warning("Erreur chargement machine " + id + ": " + ex.getMessage());
             }
         }
     }
 
+    /**
+     * Compile les effets d'une machine une fois pour toutes (une entrée invalide est ignorée)
+     */
+    private List<MachineEffect> compileEffects(String id, List<Map<?, ?>> entries) {
+        List<MachineEffect> effects = new ArrayList<>();
+        for (Map<?, ?> entry : entries) {
+            try {
+                effects.add(MachineEffect.compile(entry));
+            } catch (Exception ex) {
+                plugin.getLogger().warning("Effet invalide pour la machine " + id + ": " + ex.getMessage());
+            }
+        }
+        return List.copyOf(effects);
+    }
+
     public int getRegisteredCount() { return definitions.size(); }
 
+    public MachineDefinition getDefinition(String id) {
+        return definitions.get(id);
+    }
+
+    /**
+     * Première définition déclarée pour un type de machine
+     */
+    public MachineDefinition getDefinition(MachineType type) {
+        return definitionsByType.get(type);
+    }
+
+    /**
+     * Définition dont le bloc est ce matériau, ou null
+     */
+    public MachineDefinition getDefinitionByBlock(Material block) {
+        return definitionsByBlock.get(block);
+    }
+
     public void registerActive(UUID owner, String id, Location loc) {
         MachineDefinition def = definitions.get(id);
         if(def == null) return;
         
         // Placer le bloc simple de la machine
-        Material blockType = getMaterialForMachine(id);
+        Material blockType = def.blockMaterial();
         loc.getBlock().setType(blockType);
-        System.out.println("[SkyTycoon] Machine " + id + " placée avec bloc " + blockType);
+        if (debug.enabled(DebugCategory.LIFECYCLE)) {
+            debug.log(DebugCategory.LIFECYCLE, "Machine " + id + " placée avec bloc " + blockType);
+        }
         
         ActiveMachine am = new ActiveMachine(owner, def, loc, 0L); // Commencer à 0 avec notre compteur interne
-        active.put(loc, am);
         scheduleMachine(am);
         
         // Créer l'hologramme pour cette machine avec l'ID pour le formatage
         hologramManager.createMachineHologram(am.location(), am.def().displayName(), id);
 
-        // Sauvegarder après ajout
-        saveMachinesToFile();
+        // Enregistrée au prochain flush
+        markDirty(am);
+        journal(MachineJournal.Op.PLACE, am);
     }
 
-    private void scheduleMachine(ActiveMachine am) {
+    /**
+     * Indexe la machine et la rattache au lot de sa section (la tâche du lot est créée au besoin).
+     * Son compteur interne démarre au début de son cycle en cours.
+     */
+    private MachineRuntime scheduleMachine(ActiveMachine am) {
         Location l = am.location();
-        plugin.getLogger().info("Démarrage de la machine " + am.def().displayName() + " à " + 
-            l.getBlockX() + "," + l.getBlockY() + "," + l.getBlockZ());
-        long startTick = am.nextTick() - am.getCurrentInterval();
-        if (startTick < 0) startTick = 0;
-        machineTickCounters.put(l, startTick);
-        Material mainProductMaterial = am.getMainProduct();
-        lastDisplayedAmount.put(l, am.getStoredAmount(mainProductMaterial));
-        lastDisplayedProgress.put(l, 0);
-        lastDisplayedBar.put(l, "");
-        var task = Bukkit.getRegionScheduler().runAtFixedRate(plugin, l, scheduledTask -> {
-            long currentTick = machineTickCounters.merge(l, 1L, Long::sum);
-            Material mainProductMaterial1 = am.getMainProduct();
-            String mainProduct = mainProductMaterial1.name().toLowerCase().replace("_", " ");
-            int amount = am.getStoredAmount(mainProductMaterial1);
-            long interval = am.getCurrentInterval();
-            long startTickVal = am.nextTick() - interval;
-            int progressMax = (int) interval;
-            int progressCurrent = (int) Math.max(0, Math.min(interval, currentTick - startTickVal));
-            String progressBar = "";
-            if (plugin.getLangManager() != null && am.def() != null) {
-                progressBar = plugin.getLangManager().createProgressBar(progressCurrent, progressMax).toString();
-            }
-            // Production
-            if(currentTick >= am.nextTick()) {
-                System.out.println("[SkyTycoon] *** PRODUCTION TIME! ***");
-                boolean produced = am.produceAndCheck();
-                System.out.println("[SkyTycoon] Production result: " + produced);
-                if (produced) {
-                    // Mettre à jour l'hologramme si la quantité ou la progress bar a changé
-                    boolean update = false;
-                    if (lastDisplayedAmount.getOrDefault(l, -1) != amount) update = true;
-                    if (!Objects.equals(lastDisplayedBar.get(l), progressBar)) update = true;
-                    if (update) {
-                        hologramManager.updateMachineHologram(am.location(), am.def().displayName(), amount, mainProduct, am.def().id());
-                        lastDisplayedAmount.put(l, amount);
-                        lastDisplayedProgress.put(l, progressCurrent);
-                        lastDisplayedBar.put(l, progressBar);
-                    }
-                    addMachineEffects(l, am.def().id());
-                    Location effectLocation = l.clone().add(0.5, 1.5, 0.5);
-                    l.getWorld().spawnParticle(Particle.HAPPY_VILLAGER, effectLocation, 1,
-                        0.1, 0.1, 0.1, 0.05);
-                } else {
-                    System.out.println("[SkyTycoon] DEBUG - Machine ne peut pas produire (storage plein?)");
+        if (debug.enabled(DebugCategory.LIFECYCLE)) {
+            debug.log(DebugCategory.LIFECYCLE, "Démarrage de la machine " + am.def().displayName() + " à " +
+                l.getBlockX() + "," + l.getBlockY() + "," + l.getBlockZ());
+        }
+        long startTick = Math.max(0, am.nextTick() - am.getCurrentInterval());
+        MachineKey key = MachineKey.of(l);
+        ChunkPos chunk = ChunkPos.of(l);
+        boolean dormant = !isAwake(chunk, null);
+        MachineRuntime[] created = new MachineRuntime[1];
+        batches.compute(MachineTickBatch.Key.of(l), (batchKey, batch) -> {
+            if (batch == null) batch = new MachineTickBatch(this, batchKey, l);
+            created[0] = new MachineRuntime(am, key, batch, startTick, dormant);
+            batch.add(created[0]);
+            return batch;
+        });
+        MachineRuntime previous = runtimes.put(key, created[0]);
+        if (previous != null) {
+            unindex(previous);
+            unindexOwner(previous);
+            previous.batch().remove(previous);
+        }
+        machinesByChunk.computeIfAbsent(chunk, c -> ConcurrentHashMap.newKeySet()).add(created[0]);
+        machinesByOwner.computeIfAbsent(am.owner(), o -> ConcurrentHashMap.newKeySet()).add(key);
+        return created[0];
+    }
+
+    private void unindex(MachineRuntime runtime) {
+        machinesByChunk.computeIfPresent(runtime.chunk(), (chunk, set) -> {
+            set.remove(runtime);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private void unindexOwner(MachineRuntime runtime) {
+        machinesByOwner.computeIfPresent(runtime.machine().owner(), (owner, set) -> {
+            set.remove(runtime.key());
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Une machine est éveillée si son chunk est chargé et qu'un joueur est à proximité
+     * @param loaded état de chargement connu (événement de chunk), ou null pour le lire dans le monde
+     */
+    private boolean isAwake(ChunkPos chunk, Boolean loaded) {
+        if (!presence.isObserved(chunk)) return false;
+        if (loaded != null) return loaded;
+        org.bukkit.World world = Bukkit.getWorld(chunk.world());
+        return world != null && world.isChunkLoaded(chunk.x(), chunk.z());
+    }
+
+    /**
+     * Réévalue le sommeil des machines d'un chunk: endormies elles ne coûtent rien
+     * (ni hologramme ni effets), réveillées elles règlent leur production d'un coup.
+     * @param loaded état de chargement connu (événement de chunk), ou null pour le lire dans le monde
+     */
+    public void refreshPresence(ChunkPos chunk, Boolean loaded) {
+        Set<MachineRuntime> machines = machinesByChunk.get(chunk);
+        if (machines == null || machines.isEmpty()) return;
+        boolean awake = isAwake(chunk, loaded);
+        if (debug.sample(DebugCategory.PRESENCE)) {
+            debug.log(DebugCategory.PRESENCE, "Chunk " + chunk.x() + "," + chunk.z() + (awake ? " éveillé" : " endormi") +
+                " (" + machines.size() + " machines)");
+        }
+        for (MachineRuntime runtime : machines) {
+            if (awake) {
+                if (runtime.isDormant()) {
+                    runtime.setDormant(false);
+                    runtime.batch().wake(runtime);
                 }
-                am.scheduleNext(currentTick);
-                plugin.getLogger().info("Machine " + am.def().displayName() + " a produit. Stockage: " +
-                    am.getStorageDisplay());
             } else {
-                // Mise à jour de l'hologramme uniquement si la progress bar change
-                if (!Objects.equals(lastDisplayedBar.get(l), progressBar)) {
-                    hologramManager.updateMachineHologram(am.location(), am.def().displayName(), amount, mainProduct, am.def().id());
-                    lastDisplayedAmount.put(l, amount);
-                    lastDisplayedProgress.put(l, progressCurrent);
-                    lastDisplayedBar.put(l, progressBar);
-                }
+                runtime.setDormant(true);
             }
-        }, 1L, 5L); // Exécuter toutes les 5 ticks (0.25 secondes)
-        // Stocker la tâche pour pouvoir l'arrêter plus tard
-        machineTasks.put(l, task);
+        }
     }
 
-    public void shutdown() {
-        // Arrêter toutes les tâches
-        for (var task : machineTasks.values()) {
-            if (task != null) {
-                task.cancel();
+    /**
+     * Appelé par un lot devenu vide: on le retire seulement si aucune machine n'a été ajoutée entre-temps
+     */
+    void retireBatch(MachineTickBatch batch) {
+        boolean[] retired = {false};
+        batches.computeIfPresent(batch.key(), (key, current) -> {
+            if (current == batch && batch.isIdle()) {
+                retired[0] = true;
+                return null;
+            }
+            return current;
+        });
+        if (retired[0]) {
+            batch.cancel();
+        }
+    }
+
+    /**
+     * Un passage de tick pour une machine, exécuté par le lot de sa section sur le thread de la région.
+     * La production est réglée à la demande (voir ActiveMachine.settle): ce passage ne sert qu'à
+     * l'affichage, les machines en sommeil ne passent donc jamais ici.
+     * @param currentTick compteur interne de la machine pour ce passage
+     * @return le compteur auquel la machine doit être réveillée: prochaine production
+     *         ou prochain changement d'étape de la barre de progression (ignoré si la machine est garée)
+     */
+    long tickMachine(MachineRuntime runtime, long currentTick) {
+        ActiveMachine am = runtime.machine();
+        // Production: tous les cycles écoulés depuis le dernier règlement sont réglés d'un coup
+        if(currentTick >= am.nextTick()) {
+            int produced = am.settle(currentTick);
+            if (produced > 0) {
+                // Joués à la fin du passage du lot, regroupés et dans la limite du budget
+                runtime.batch().effects().request(am);
+                recordProduction(am, runtime.key());
+            }
+            // Événement de chaque passage: échantillonné pour ne pas inonder la console
+            if (debug.sample(DebugCategory.PRODUCTION)) {
+                debug.log(DebugCategory.PRODUCTION, "Machine " + am.def().displayName() + " a produit " + produced +
+                    ". Stockage: " + am.getStorageDisplay());
             }
         }
-        machineTasks.clear();
+        if (!am.canProduce() && park(runtime)) {
+            return currentTick;
+        }
+        int amount = am.getStorage().getSlot(MachineStorage.MAIN_SLOT);
+        long interval = am.getCurrentInterval();
+        long startTickVal = am.nextTick() - interval;
+        int progressMax = (int) interval;
+        int progressCurrent = (int) Math.max(0, Math.min(interval, currentTick - startTickVal));
+        int progressStep = LangManager.progressStep(progressCurrent, progressMax);
+        // Mettre à jour l'hologramme si la quantité ou la progress bar a changé
+        if (runtime.lastDisplayedAmount != amount || runtime.lastDisplayedStep != progressStep) {
+            hologramManager.updateMachineHologram(runtime, amount, progressCurrent, progressMax);
+            runtime.lastDisplayedAmount = amount;
+            runtime.lastDisplayedProgress = progressCurrent;
+            runtime.lastDisplayedStep = progressStep;
+        }
+        return nextWakeTick(am, currentTick);
+    }
+
+    /**
+     * Rafale d'effets d'une production: rejeu des effets compilés de la définition
+     * @param merged nombre de machines fusionnées dans cette rafale
+     */
+    void playProductionEffects(ActiveMachine am, int merged) {
+        am.playMachineAnimation(merged);
+    }
+
+    void logEffects(int bursts, int culled, int dropped, int packets) {
+        if (debug.sample(DebugCategory.EFFECTS)) {
+            debug.log(DebugCategory.EFFECTS, bursts + " rafales, " + culled + " sans joueur, " +
+                dropped + " hors budget, " + packets + " paquets");
+        }
+    }
+
+    /**
+     * Gare une machine pleine: plus aucun réveil, l'hologramme affiche une seule fois le stockage plein
+     * @return false si un retrait concurrent a libéré de la place entre-temps (la machine reste en file)
+     */
+    private boolean park(MachineRuntime runtime) {
+        ActiveMachine am = runtime.machine();
+        runtime.setParked(true);
+        // Un retrait a pu libérer de la place et voir la machine encore non garée (voir releaseParked):
+        // on relit le stockage après avoir posé le drapeau, l'un des deux voit forcément l'autre
+        if (am.canProduce()) {
+            runtime.setParked(false);
+            return false;
+        }
+        if (debug.enabled(DebugCategory.PRODUCTION)) {
+            debug.log(DebugCategory.PRODUCTION, "Machine " + am.def().displayName() + " garée (stockage plein) à " +
+                am.location().getBlockX() + "," + am.location().getBlockY() + "," + am.location().getBlockZ());
+        }
+        hologramManager.showStorageFull(runtime);
+        // Forcer un rendu complet au retour en production
+        runtime.lastDisplayedAmount = -1;
+        runtime.lastDisplayedStep = 0;
+        return true;
+    }
+
+    /**
+     * Relance une machine garée après un retrait qui a libéré de la place.
+     * La machine doit avoir été réglée juste avant le retrait (aucun cycle n'est crédité
+     * pour la période passée pleine).
+     */
+    private void releaseParked(ActiveMachine machine) {
+        MachineRuntime runtime = runtimes.get(MachineKey.of(machine.location()));
+        if (runtime == null || !runtime.isParked() || !machine.canProduce()) return;
+        runtime.setParked(false);
+        runtime.batch().wake(runtime);
+    }
+
+    /**
+     * Règle la production accumulée d'une machine jusqu'à maintenant
+     * (ouverture de menu, retrait, affichage, sauvegarde)
+     */
+    public int settle(ActiveMachine machine) {
+        int produced = machine.settle(getCurrentTick(machine));
+        if (produced > 0) {
+            recordProduction(machine, MachineKey.of(machine.location()));
+            if (debug.sample(DebugCategory.PRODUCTION)) {
+                debug.log(DebugCategory.PRODUCTION, "Machine " + machine.def().displayName() + " réglée à la demande: " +
+                    produced + " productions. Stockage: " + machine.getStorageDisplay());
+            }
+        }
+        return produced;
+    }
+
+    /**
+     * Production réglée: la machine est réécrite au prochain flush et journalisée d'ici là
+     */
+    private void recordProduction(ActiveMachine machine, MachineKey key) {
+        markDirty(machine.owner(), key);
+        journal(MachineJournal.Op.PRODUCE, machine);
+    }
+
+    /**
+     * Marque une machine comme modifiée: son enregistrement sera réécrit au prochain flush
+     */
+    public void markDirty(ActiveMachine machine) {
+        markDirty(machine.owner(), MachineKey.of(machine.location()));
+    }
+
+    private void markDirty(UUID owner, MachineKey key) {
+        // Ajout dans compute: jamais perdu face au retrait de l'ensemble par recordsOf
+        dirtyByOwner.compute(owner, (o, keys) -> {
+            if (keys == null) keys = new HashSet<>();
+            keys.add(key);
+            return keys;
+        });
+        writer.request();
+    }
+
+    /**
+     * Prochain réveil utile: la production ou la prochaine étape visible de la barre de progression
+     */
+    private long nextWakeTick(ActiveMachine am, long currentTick) {
+        long interval = am.getCurrentInterval();
+        long startTick = am.nextTick() - interval;
+        int progressCurrent = (int) Math.max(0, Math.min(interval, currentTick - startTick));
+        long nextStep = startTick + LangManager.nextProgressStepAt(progressCurrent, (int) interval);
+        return Math.min(am.nextTick(), Math.max(currentTick + 1, nextStep));
+    }
+
+    public void shutdown() {
+        // Arrêter toutes les tâches de lot
+        for (MachineTickBatch batch : batches.values()) {
+            batch.cancel();
+        }
+        batches.clear();
         
         // Supprimer tous les hologrammes
         hologramManager.removeAllHolograms();
         
-        // Nettoyer les compteurs
-        machineTickCounters.clear();
-        
-        active.clear();
+        runtimes.clear();
+        machinesByChunk.clear();
+        presence.clear();
     }
 
     public ItemStack createMachineItem(String id) {
@@ -215,35 +510,34 @@ public class MachineManager {
      * Récupère une machine active à une location donnée
      */
     public ActiveMachine getActiveMachine(Location location) {
-        return active.get(location);
+        MachineRuntime runtime = runtimes.get(MachineKey.of(location));
+        return runtime != null ? runtime.machine() : null;
     }
     
     /**
      * Désactive et retire une machine active
      */
     public boolean unregisterActive(Location location) {
-        // Arrêter la tâche de production
-        var task = machineTasks.remove(location);
-        if (task != null) {
-            task.cancel();
+        // Retirer la machine de l'index et de son lot de production
+        MachineRuntime runtime = runtimes.remove(MachineKey.of(location));
+        if (runtime != null) {
+            unindex(runtime);
+            unindexOwner(runtime);
+            runtime.batch().remove(runtime);
         }
         // Supprimer l'hologramme
         hologramManager.removeMachineHologram(location);
         // Supprimer le bloc de la machine (remettre de l'air)
         location.getBlock().setType(Material.AIR);
-        System.out.println("[SkyTycoon] Bloc de machine supprimé à " + location);
-        // Nettoyer le compteur de ticks
-        machineTickCounters.remove(location);
-        // Nettoyer la dernière quantité affichée
-        lastDisplayedAmount.remove(location);
-        lastDisplayedProgress.remove(location);
-        lastDisplayedBar.remove(location);
-        ActiveMachine removed = active.remove(location);
-        if (removed != null) {
-            plugin.getLogger().info("Machine " + removed.def().displayName() + 
-                " désactivée à " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ());
-            // Sauvegarder après suppression
-            saveMachinesToFile();
+        if (runtime != null) {
+            ActiveMachine removed = runtime.machine();
+            if (debug.enabled(DebugCategory.LIFECYCLE)) {
+                debug.log(DebugCategory.LIFECYCLE, "Machine " + removed.def().displayName() +
+                    " désactivée à " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ());
+            }
+            // Retirée du fichier à la prochaine écriture
+            markDirty(removed.owner(), runtime.key());
+            journal(MachineJournal.Op.REMOVE, removed);
             return true;
         }
         return false;
@@ -253,192 +547,270 @@ public class MachineManager {
      * Obtient le nombre de machines actives
      */
     public int getActiveMachineCount() {
-        return active.size();
+        return runtimes.size();
     }
     
     /**
      * Met à jour l'affichage d'une machine (méthode publique)
      */
     public void updateMachineDisplay(ActiveMachine machine) {
-        Material mainProductMaterial = machine.getMainProduct();
-        String mainProduct = mainProductMaterial.name().toLowerCase().replace("_", " ");
-        int amount = machine.getStoredAmount(mainProductMaterial);
-        hologramManager.updateMachineHologram(machine.location(), machine.def().displayName(), amount, mainProduct);
+        MachineRuntime runtime = runtimes.get(MachineKey.of(machine.location()));
+        if (runtime == null) return;
+        long currentTick = runtime.currentTick();
+        if (machine.settle(currentTick) > 0) recordProduction(machine, runtime.key());
+        long interval = machine.getCurrentInterval();
+        int progressCurrent = (int) Math.max(0, Math.min(interval, currentTick - (machine.nextTick() - interval)));
+        hologramManager.updateMachineHologram(runtime, machine.getStorage().getSlot(MachineStorage.MAIN_SLOT),
+            progressCurrent, (int) interval);
     }
     
+    public long getCurrentTick(Location loc) {
+        MachineRuntime runtime = runtimes.get(MachineKey.of(loc));
+        return runtime != null ? runtime.currentTick() : 0L;
+    }
+
+    /**
+     * Compteur interne courant d'une machine, même si elle n'a pas été réveillée depuis longtemps
+     */
+    public long getCurrentTick(ActiveMachine machine) {
+        return getCurrentTick(machine.location());
+    }
+
     /**
-     * Obtient le matériau de bloc pour un type de machine
+     * Sauvegarde complète (arrêt du serveur): règle la production de toutes les machines
+     * et les marque modifiées. L'écriture est faite par le DataWriter (vidé dans onDisable).
      */
-    private Material getMaterialForMachine(String machineId) {
-        switch (machineId.toLowerCase()) {
-            case "basic_miner":
-                return Material.COBBLESTONE;
-            case "wood_cutter":
-                return Material.OAK_LOG;
-            case "crop_farm":
-                return Material.HAY_BLOCK;
-            case "mob_grinder":
-                return Material.REDSTONE_BLOCK;
-            case "sell_station":
-                return Material.EMERALD_BLOCK;
-            default:
-                return Material.STONE; // Fallback
+    public void saveMachinesToFile() {
+        for (MachineRuntime runtime : runtimes.values()) {
+            // Enregistrer la production accumulée depuis le dernier règlement
+            if (runtime.machine().settle(runtime.currentTick()) > 0) {
+                journal(MachineJournal.Op.PRODUCE, runtime.machine());
+            }
+            markDirty(runtime.machine().owner(), runtime.key());
         }
     }
-    
+
     /**
-     * Ajoute des effets visuels spécifiques pour chaque type de machine
+     * Propriétaires dont des machines ont changé depuis leur dernier instantané
      */
-    private void addMachineEffects(Location location, String machineId) {
-        Location effectLoc = location.clone().add(0.5, 1.0, 0.5);
-        
-        switch (machineId.toLowerCase()) {
-            case "basic_miner":
-                // Poussière de pierre qui tombe
-                location.getWorld().spawnParticle(Particle.BLOCK, effectLoc, 5,
-                    0.3, 0.2, 0.3, 0.1, Material.COBBLESTONE.createBlockData());
-                // Sons de pioche
-                location.getWorld().playSound(location, org.bukkit.Sound.BLOCK_STONE_BREAK, 0.5f, 1.0f);
-                break;
-                
-            case "wood_cutter":
-                // Copeaux de bois qui volent
-                location.getWorld().spawnParticle(Particle.BLOCK, effectLoc, 4,
-                    0.4, 0.3, 0.4, 0.2, Material.OAK_LOG.createBlockData());
-                // Son de hache
-                location.getWorld().playSound(location, org.bukkit.Sound.BLOCK_WOOD_BREAK, 0.6f, 0.8f);
-                break;
-                
-            case "crop_farm":
-                // Particules vertes de croissance
-                location.getWorld().spawnParticle(Particle.HAPPY_VILLAGER, effectLoc, 3,
-                    0.5, 0.2, 0.5, 0.1);
-                // Particules de blé
-                location.getWorld().spawnParticle(Particle.ITEM, effectLoc, 2,
-                    0.3, 0.1, 0.3, 0.1, new org.bukkit.inventory.ItemStack(Material.WHEAT));
-                // Son de récolte
-                location.getWorld().playSound(location, org.bukkit.Sound.BLOCK_CROP_BREAK, 0.7f, 1.2f);
-                break;
-                
-            case "mob_grinder":
-                // Particules rouges de combat
-                location.getWorld().spawnParticle(Particle.DAMAGE_INDICATOR, effectLoc, 3,
-                    0.3, 0.2, 0.3, 0.1);
-                // Particules de sang/chair
-                location.getWorld().spawnParticle(Particle.ITEM, effectLoc, 2,
-                    0.2, 0.1, 0.2, 0.1, new org.bukkit.inventory.ItemStack(Material.ROTTEN_FLESH));
-                // Son de combat
-                location.getWorld().playSound(location, org.bukkit.Sound.ENTITY_ZOMBIE_HURT, 0.4f, 0.8f);
-                break;
-                
-            case "sell_station":
-                // Particules dorées d'argent
-                location.getWorld().spawnParticle(Particle.GLOW, effectLoc, 4,
-                    0.3, 0.3, 0.3, 0.1);
-                // Particules d'émeraudes
-                location.getWorld().spawnParticle(Particle.ITEM, effectLoc, 1,
-                    0.2, 0.2, 0.2, 0.1, new org.bukkit.inventory.ItemStack(Material.EMERALD));
-                // Son de vente
-                location.getWorld().playSound(location, org.bukkit.Sound.ENTITY_EXPERIENCE_ORB_PICKUP, 0.8f, 1.5f);
-                break;
+    public Set<UUID> dirtyOwners() {
+        return Set.copyOf(dirtyByOwner.keySet());
+    }
+
+    /**
+     * Enregistrements des machines d'un propriétaire pour son fichier d'île.
+     * Appelé par le thread du DataWriter. Seules les machines modifiées sont resérialisées,
+     * les autres réutilisent leur dernier enregistrement. Aucun règlement n'est fait ici:
+     * la production non réglée est rattrapée au chargement depuis lastProductionTime.
+     */
+    public List<MachineRecord> recordsOf(UUID owner) {
+        Set<MachineKey> dirty = dirtyByOwner.remove(owner);
+        Map<MachineKey, MachineRecord> records = recordsByOwner.computeIfAbsent(owner, o -> new ConcurrentHashMap<>());
+        if (dirty != null) {
+            for (MachineKey key : dirty) {
+                MachineRuntime runtime = runtimes.get(key);
+                if (runtime == null || !runtime.machine().owner().equals(owner)) {
+                    records.remove(key);
+                } else {
+                    records.put(key, toRecord(runtime.machine()));
+                }
+            }
+        }
+        if (records.isEmpty()) recordsByOwner.remove(owner);
+        if (dirty != null && debug.enabled(DebugCategory.PERSISTENCE)) {
+            debug.log(DebugCategory.PERSISTENCE, owner + ": " + dirty.size() + " machines modifiées, " + records.size() + " enregistrées");
         }
+        return List.copyOf(records.values());
     }
 
-    public long getCurrentTick(Location loc) {
-        return machineTickCounters.getOrDefault(loc, 0L);
+    /**
+     * Vrai si au moins une machine du propriétaire est éveillée (chunk chargé et joueur à proximité)
+     */
+    public boolean hasAwakeMachines(UUID owner) {
+        Set<MachineKey> keys = machinesByOwner.get(owner);
+        if (keys == null) return false;
+        for (MachineKey key : keys) {
+            MachineRuntime runtime = runtimes.get(key);
+            if (runtime != null && !runtime.isDormant()) return true;
+        }
+        return false;
     }
 
     /**
-     * Sauvegarde les machines actives dans un fichier YAML
+     * Décharge toutes les machines d'un propriétaire (île inactive): leur production est réglée,
+     * elles quittent leurs lots et leurs hologrammes sont oubliés sans toucher aux entités,
+     * reprises au prochain chargement. Appelé par le thread du DataWriter.
+     * @return les enregistrements à jour de toutes ses machines, à écrire dans son fichier d'île
      */
-    public void saveMachinesToFile() {
-        java.io.File file = new java.io.File(plugin.getDataFolder(), "machines_data.yml");
-        YamlConfiguration yaml = new YamlConfiguration();
-        int i = 0;
-        for (Map.Entry<Location, ActiveMachine> entry : active.entrySet()) {
-            ActiveMachine machine = entry.getValue();
-            String key = "machines." + i;
-            yaml.set(key + ".owner", machine.owner().toString());
-            yaml.set(key + ".machineId", machine.def().id());
-            yaml.set(key + ".world", machine.location().getWorld().getName());
-            yaml.set(key + ".x", machine.location().getBlockX());
-            yaml.set(key + ".y", machine.location().getBlockY());
-            yaml.set(key + ".z", machine.location().getBlockZ());
-            yaml.set(key + ".level", machine.getLevel());
-            yaml.set(key + ".nextTick", machine.nextTick());
-            // Stockage
-            Map<String, Integer> storageMap = new HashMap<>();
-            for (Map.Entry<org.bukkit.Material, Integer> st : machine.getStorage().entrySet()) {
-                storageMap.put(st.getKey().name(), st.getValue());
+    public List<MachineRecord> unloadOwner(UUID owner) {
+        Map<MachineKey, MachineRecord> records = recordsByOwner.remove(owner);
+        if (records == null) records = new HashMap<>();
+        Set<MachineKey> dirty = dirtyByOwner.remove(owner);
+        if (dirty != null) {
+            // Machines retirées depuis le dernier instantané
+            for (MachineKey key : dirty) {
+                if (!runtimes.containsKey(key)) records.remove(key);
             }
-            yaml.set(key + ".storage", storageMap);
-            i++;
         }
-        try {
-            yaml.save(file);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Erreur lors de la sauvegarde des machines: " + e.getMessage());
+        Set<MachineKey> keys = machinesByOwner.remove(owner);
+        if (keys != null) {
+            for (MachineKey key : keys) {
+                MachineRuntime runtime = runtimes.remove(key);
+                if (runtime == null) continue;
+                ActiveMachine machine = runtime.machine();
+                // Le fichier d'île est écrit juste après; journalisé au cas où l'écriture n'aboutirait pas
+                if (machine.settle(runtime.currentTick()) > 0) journal(MachineJournal.Op.PRODUCE, machine);
+                unindex(runtime);
+                runtime.batch().remove(runtime);
+                hologramManager.forgetMachineHologram(machine.location());
+                records.put(key, toRecord(machine));
+            }
         }
+        return List.copyOf(records.values());
     }
 
     /**
-     * Charge les machines actives depuis un fichier YAML
+     * Recrée les machines d'un fichier d'île et rattache leurs hologrammes dans les chunks déjà chargés
      */
-    public void loadMachinesFromFile() {
-        java.io.File file = new java.io.File(plugin.getDataFolder(), "machines_data.yml");
-        if (!file.exists()) return;
-        // Nettoyer tous les anciens hologrammes pour éviter les doublons/orphelins
-        hologramManager.removeAllHolograms();
-        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
-        ConfigurationSection section = yaml.getConfigurationSection("machines");
-        if (section == null) return;
-        for (String key : section.getKeys(false)) {
-            String ownerStr = section.getString(key + ".owner");
-            String machineId = section.getString(key + ".machineId");
-            String worldName = section.getString(key + ".world");
-            int x = section.getInt(key + ".x");
-            int y = section.getInt(key + ".y");
-            int z = section.getInt(key + ".z");
-            int level = section.getInt(key + ".level", 1);
-            long nextTick = section.contains(key + ".nextTick") ? section.getLong(key + ".nextTick") : -1L;
-            long lastProductionTime = section.contains(key + ".lastProductionTime") ? section.getLong(key + ".lastProductionTime") : 0L;
-            org.bukkit.World world = Bukkit.getWorld(worldName);
-            if (world == null) continue;
-            Location loc = new Location(world, x, y, z);
-            MachineDefinition def = definitions.get(machineId);
-            if (def == null) continue;
-            ActiveMachine machine = new ActiveMachine(java.util.UUID.fromString(ownerStr), def, loc, world.getFullTime());
-            machine.setLevel(level);
-            if (nextTick > 0) machine.setNextTick(nextTick);
-            machine.setLastProductionTime(lastProductionTime);
-            // Restaurer le stockage
-            Map<String, Object> storageMap = section.getConfigurationSection(key + ".storage").getValues(false);
-            for (Map.Entry<String, Object> st : storageMap.entrySet()) {
-                try {
-                    org.bukkit.Material mat = org.bukkit.Material.valueOf(st.getKey());
-                    int amount = Integer.parseInt(st.getValue().toString());
-                    machine.getStorage().put(mat, amount);
-                } catch (Exception ignored) {}
+    public void restoreAll(Collection<MachineRecord> records) {
+        Set<ChunkPos> chunks = new HashSet<>();
+        for (MachineRecord record : records) {
+            MachineRuntime runtime = restore(record);
+            if (runtime != null) chunks.add(runtime.chunk());
+        }
+        hologramManager.bindLoadedChunks(chunks);
+    }
+
+    /**
+     * Journalise l'état courant d'une machine. Lecture et ajout se font sous le verrou de la machine
+     * (celui de settle): l'ordre du journal est celui des lectures, et la dernière entrée d'une
+     * machine ne peut pas être plus ancienne qu'une entrée rejouée avant elle.
+     */
+    private void journal(MachineJournal.Op op, ActiveMachine machine) {
+        synchronized (machine) {
+            journal.append(op, toRecord(machine));
+        }
+    }
+
+    /**
+     * Enregistrement persistant d'une machine (voir MachineStore)
+     */
+    private MachineRecord toRecord(ActiveMachine machine) {
+        Location l = machine.location();
+        // Stockage: un slot par produit, lu directement depuis les compteurs primitifs
+        Map<String, Integer> storage = new HashMap<>();
+        machine.getStorage().forEach((material, amount) -> storage.put(material.name(), amount));
+        return new MachineRecord(machine.owner(), machine.def().id(), l.getWorld().getName(),
+            MachineKey.pack(l.getBlockX(), l.getBlockY(), l.getBlockZ()), machine.getLevel(),
+            machine.nextTick(), machine.getLastProductionTime(), storage);
+    }
+
+    /**
+     * Machines des anciens fichiers globaux (machines.bin, sinon machines_data.yml),
+     * pour leur conversion en fichiers d'île; null s'il n'y en a aucun.
+     * Un machines.bin illisible est mis de côté en .corrupt-(horodatage), à examiner à la main, et la
+     * conversion continue sans lui; l'exception n'est levée que s'il ne peut pas être déplacé.
+     */
+    public List<MachineRecord> readLegacyMachines() throws java.io.IOException {
+        java.nio.file.Path binary = new java.io.File(plugin.getDataFolder(), MachineStore.FILE_NAME).toPath();
+        java.io.File yaml = new java.io.File(plugin.getDataFolder(), "machines_data.yml");
+        if (java.nio.file.Files.exists(binary)) {
+            try {
+                return MachineStore.read(binary);
+            } catch (java.io.IOException e) {
+                plugin.getLogger().severe("Impossible de lire " + MachineStore.FILE_NAME + ", mis de côté: " + e.getMessage());
+                java.nio.file.Files.move(binary, binary.resolveSibling(MachineStore.FILE_NAME + ".corrupt-" + System.currentTimeMillis()));
+            }
+        }
+        if (yaml.exists()) return readYamlMachines(yaml);
+        return null;
+    }
+
+    /**
+     * Renomme les anciens fichiers globaux en .migrated une fois leurs machines écrites ailleurs
+     */
+    public void retireLegacyMachines() throws java.io.IOException {
+        for (String name : new String[] {MachineStore.FILE_NAME, "machines_data.yml"}) {
+            java.nio.file.Path file = new java.io.File(plugin.getDataFolder(), name).toPath();
+            if (java.nio.file.Files.exists(file)) {
+                java.nio.file.Files.move(file, file.resolveSibling(name + ".migrated"),
+                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
             }
-            // Rattrapage de production après un arrêt serveur
-            long now = System.currentTimeMillis();
-            long intervalTicks = machine.getCurrentInterval();
-            long intervalMs = intervalTicks * 50L;
-            if (lastProductionTime > 0 && now > lastProductionTime && intervalMs > 0) {
-                long cycles = (now - lastProductionTime) / intervalMs;
-                for (long i = 0; i < cycles; i++) {
-                    if (!machine.canProduce()) break;
-                    machine.produceAndCheck();
+        }
+    }
+
+    /**
+     * Lecture de l'ancien format machines_data.yml
+     */
+    private List<MachineRecord> readYamlMachines(java.io.File legacy) {
+        List<MachineRecord> records = new ArrayList<>();
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(legacy);
+        ConfigurationSection section = yaml.getConfigurationSection("machines");
+        if (section != null) {
+            for (String key : section.getKeys(false)) {
+                String ownerStr = section.getString(key + ".owner");
+                String machineId = section.getString(key + ".machineId");
+                String worldName = section.getString(key + ".world");
+                if (ownerStr == null || machineId == null || worldName == null) continue;
+                Map<String, Integer> storage = new HashMap<>();
+                ConfigurationSection storageSection = section.getConfigurationSection(key + ".storage");
+                if (storageSection != null) {
+                    for (String materialName : storageSection.getKeys(false)) {
+                        storage.put(materialName, storageSection.getInt(materialName));
+                    }
                 }
-                // Mettre à jour le timestamp pour le prochain cycle
-                machine.setLastProductionTime(lastProductionTime + cycles * intervalMs);
+                records.add(new MachineRecord(UUID.fromString(ownerStr), machineId, worldName,
+                    MachineKey.pack(section.getInt(key + ".x"), section.getInt(key + ".y"), section.getInt(key + ".z")),
+                    section.getInt(key + ".level", 1),
+                    section.contains(key + ".nextTick") ? section.getLong(key + ".nextTick") : -1L,
+                    section.contains(key + ".lastProductionTime") ? section.getLong(key + ".lastProductionTime") : 0L,
+                    storage));
             }
-            active.put(loc, machine);
-            // Recréer l'hologramme
-            hologramManager.createOrUpdateHologram(machine);
-            // Relancer la tâche de production
-            scheduleMachine(machine);
         }
+        return records;
+    }
+
+    /**
+     * Recrée une machine active depuis son enregistrement, avec le rattrapage de production
+     * de la période où le serveur était arrêté
+     */
+    private MachineRuntime restore(MachineRecord record) {
+        org.bukkit.World world = Bukkit.getWorld(record.world());
+        if (world == null) return null;
+        MachineDefinition def = definitions.get(record.machineId());
+        if (def == null) return null;
+        long block = record.block();
+        Location loc = new Location(world, MachineKey.unpackX(block), MachineKey.unpackY(block), MachineKey.unpackZ(block));
+        ActiveMachine machine = new ActiveMachine(record.owner(), def, loc, world.getFullTime());
+        machine.setLevel(record.level());
+        if (record.nextTick() > 0) machine.setNextTick(record.nextTick());
+        long lastProductionTime = record.lastProductionTime();
+        machine.setLastProductionTime(lastProductionTime);
+        // Restaurer le stockage
+        for (Map.Entry<String, Integer> slot : record.storage().entrySet()) {
+            Material mat = Material.matchMaterial(slot.getKey());
+            if (mat != null) {
+                machine.getStorage().set(mat, slot.getValue());
+            }
+        }
+        // Rattrapage de production après un arrêt serveur
+        // (calcul direct, sans effets: une tick machine dure MachineTickBatch.PERIOD ticks serveur)
+        long now = System.currentTimeMillis();
+        long intervalTicks = machine.getCurrentInterval();
+        long intervalMs = intervalTicks * MachineTickBatch.PERIOD * 50L;
+        if (lastProductionTime > 0 && now > lastProductionTime && intervalMs > 0) {
+            long cycles = (now - lastProductionTime) / intervalMs;
+            machine.produceBulk(cycles);
+            // Mettre à jour le timestamp pour le prochain cycle
+            machine.setLastProductionTime(lastProductionTime + cycles * intervalMs);
+        }
+        // Indexer la machine et la rattacher à son lot de production
+        MachineRuntime runtime = scheduleMachine(machine);
+        // État chargé (rattrapage compris): rien à réécrire tant qu'elle ne change pas
+        recordsByOwner.computeIfAbsent(machine.owner(), o -> new ConcurrentHashMap<>()).put(runtime.key(), toRecord(machine));
+        // Enregistrer l'hologramme: l'entité sauvegardée avec le chunk est reprise à son chargement
+        hologramManager.registerMachineHologram(machine);
+        return runtime;
     }
 
     /**
@@ -446,6 +818,7 @@ public class MachineManager {
      * sans jamais dépasser la capacité de l'inventaire (le reste reste dans la machine)
      */
     public void withdrawFromMachine(org.bukkit.entity.Player player, ActiveMachine machine, int amount) {
+        settle(machine);
         Material mainProduct = machine.getMainProduct();
         int available = machine.getStoredAmount(mainProduct);
         if (available <= 0) {
@@ -465,12 +838,21 @@ public class MachineManager {
             player.sendMessage("§eVotre inventaire est plein !");
             return;
         }
+        // Retrait atomique: la quantité obtenue peut être inférieure si un autre retrait est passé avant
         ItemStack stack = machine.retrieveItems(mainProduct, finalTake);
+        if (stack == null) {
+            player.sendMessage("§cAucun item à retirer.");
+            return;
+        }
+        finalTake = stack.getAmount();
         player.getInventory().addItem(stack);
+        markDirty(machine);
+        journal(MachineJournal.Op.WITHDRAW, machine);
+        releaseParked(machine);
         if (finalTake < toTake) {
             player.sendMessage("§eVous n'aviez pas assez de place, seuls " + finalTake + " ont été retirés.");
         } else {
-            player.sendMessage("§aVous avez retiré " + finalTake + " " + mainProduct.name().toLowerCase().replace("_", " ") + ".");
+            player.sendMessage("§aVous avez retiré " + finalTake + " " + machine.def().productName() + ".");
         }
     }
 
@@ -479,6 +861,7 @@ public class MachineManager {
      * sans jamais dépasser la capacité de l'inventaire (le reste reste dans la machine)
      */
     public void withdrawAllFromMachine(org.bukkit.entity.Player player, ActiveMachine machine) {
+        settle(machine);
         Material mainProduct = machine.getMainProduct();
         int available = machine.getStoredAmount(mainProduct);
         if (available <= 0) {
@@ -491,12 +874,21 @@ public class MachineManager {
             return;
         }
         int toTake = Math.min(available, freeSpace);
+        // Retrait atomique: la quantité obtenue peut être inférieure si un autre retrait est passé avant
         ItemStack stack = machine.retrieveItems(mainProduct, toTake);
+        if (stack == null) {
+            player.sendMessage("§cAucun item à retirer.");
+            return;
+        }
+        toTake = stack.getAmount();
         player.getInventory().addItem(stack);
+        markDirty(machine);
+        journal(MachineJournal.Op.WITHDRAW, machine);
+        releaseParked(machine);
         if (toTake < available) {
             player.sendMessage("§eVous n'aviez pas assez de place, seuls " + toTake + " ont été retirés.");
         } else {
-            player.sendMessage("§aVous avez retiré " + toTake + " " + mainProduct.name().toLowerCase().replace("_", " ") + ".");
+            player.sendMessage("§aVous avez retiré " + toTake + " " + machine.def().productName() + ".");
         }
     }
 
@@ -28,9 +28,11 @@ public class MachineMenu {
         this.player = player;
         this.machine = machine;
         this.mainMenu = new MachineMainMenu(plugin, player, machine);
+        // Régler la production accumulée avant d'afficher le stockage
+        plugin.machines().settle(machine);
         // Utilise un HOPPER 5 slots pour le sous-menu stockage
         this.inventory = Bukkit.createInventory(null, InventoryType.HOPPER,
-            lang.getMachineHologramName(machine.def().id(), machine.getLevel()));
+            lang.getMachineHologramName(machine.def(), machine.getLevel()));
         setupMenu();
     }
 
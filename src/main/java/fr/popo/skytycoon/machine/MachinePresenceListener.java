@@ -0,0 +1,81 @@
+package fr.popo.skytycoon.machine;
+
+import fr.popo.skytycoon.SkyTycoonPlugin;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+
+/**
+ * Cycle de vie des machines selon le chargement des chunks et la présence des joueurs:
+ * une machine dont le chunk est déchargé ou sans joueur à proximité passe en sommeil,
+ * et un hologramme sans joueur à portée de vue n'est plus mis à jour.
+ */
+public class MachinePresenceListener implements Listener {
+    private final SkyTycoonPlugin plugin;
+
+    public MachinePresenceListener(SkyTycoonPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        // Île de ce chunk pas encore chargée: ses machines arrivent depuis son fichier
+        if (plugin.islands() != null) plugin.islands().onChunkLoad(event.getChunk());
+        plugin.machines().hologramManager().onChunkLoad(event.getChunk());
+        plugin.machines().refreshPresence(ChunkPos.of(event.getChunk()), true);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        // Les entités d'un chunk peuvent être chargées après le chunk lui-même
+        plugin.machines().hologramManager().onEntitiesLoad(event.getChunk(), event.getEntities());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        plugin.machines().refreshPresence(ChunkPos.of(event.getChunk()), false);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        if (plugin.islands() != null) plugin.islands().requestLoad(event.getPlayer().getUniqueId());
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), null);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent event) {
+        // Appelé très souvent: on ne fait rien tant que le joueur reste dans le même chunk
+        if (!PresenceTracker.changedChunk(event.getFrom(), event.getTo())) return;
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        if (!PresenceTracker.changedChunk(event.getFrom(), event.getTo())) return;
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        plugin.machines().trackPlayer(event.getPlayer().getUniqueId(), event.getRespawnLocation());
+    }
+}
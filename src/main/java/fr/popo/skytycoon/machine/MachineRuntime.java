@@ -0,0 +1,82 @@
+package fr.popo.skytycoon.machine;
+
+/**
+ * État d'exécution d'une machine active: rattachement à son lot de tick, compteur interne
+ * et dernier état affiché, en champs primitifs plutôt que dans des maps indexées par Location.
+ */
+public class MachineRuntime implements Comparable<MachineRuntime> {
+    private final ActiveMachine machine;
+    private final MachineKey key;
+    private final ChunkPos chunk;
+    private final MachineTickBatch batch;
+
+    // Compteur interne avant le rattachement au lot
+    private final long startTick;
+    // Une fois rattachée: compteur interne = horloge du lot + offset
+    private long offset;
+    private volatile boolean attached;
+    private volatile boolean removed;
+    // En sommeil: chunk déchargé ou aucun joueur à proximité, la machine n'est plus réveillée
+    private volatile boolean dormant;
+    // Garée: stockage plein, la machine ne coûte plus rien jusqu'à ce qu'un retrait libère de la place
+    private volatile boolean parked;
+    // Prochain réveil, dans l'horloge du lot (utilisés uniquement par le thread de la région)
+    long wakeAt;
+    boolean queued;
+
+    // Dernier état rendu dans l'hologramme (-1 / étape 0 = jamais affiché)
+    int lastDisplayedAmount = -1;
+    int lastDisplayedProgress;
+    int lastDisplayedStep;
+
+    MachineRuntime(ActiveMachine machine, MachineKey key, MachineTickBatch batch, long startTick, boolean dormant) {
+        this.machine = machine;
+        this.key = key;
+        this.chunk = ChunkPos.of(machine.location());
+        this.batch = batch;
+        this.startTick = startTick;
+        this.dormant = dormant;
+    }
+
+    public ActiveMachine machine() { return machine; }
+    public MachineKey key() { return key; }
+    public ChunkPos chunk() { return chunk; }
+    public MachineTickBatch batch() { return batch; }
+
+    public boolean isDormant() { return dormant; }
+
+    void setDormant(boolean dormant) { this.dormant = dormant; }
+
+    public boolean isParked() { return parked; }
+
+    void setParked(boolean parked) { this.parked = parked; }
+
+    /**
+     * Rattache la machine à l'horloge du lot: son premier passage a lieu au tick courant du lot
+     */
+    void attach(long clock) {
+        offset = startTick - (clock - 1);
+        wakeAt = clock;
+        attached = true;
+    }
+
+    boolean isAttached() { return attached; }
+
+    void markRemoved() { removed = true; }
+
+    public boolean isRemoved() { return removed; }
+
+    long offset() { return offset; }
+
+    /**
+     * Compteur interne courant de la machine, lisible depuis n'importe quel thread
+     */
+    public long currentTick() {
+        return attached ? batch.clock() + offset : startTick;
+    }
+
+    @Override
+    public int compareTo(MachineRuntime other) {
+        return Long.compare(wakeAt, other.wakeAt);
+    }
+}
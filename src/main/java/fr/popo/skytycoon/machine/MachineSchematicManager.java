@@ -78,28 +78,9 @@ public class MachineSchematicManager {
      * Méthode de fallback - place un seul bloc comme avant
      */
     private boolean placeSimpleMachine(Location location, MachineType type) {
-        Material material;
-        
-        switch (type) {
-            case BASIC_MINER:
-                material = Material.COBBLESTONE;
-                break;
-            case WOOD_CUTTER:
-                material = Material.OAK_LOG;
-                break;
-            case CROP_FARM:
-                material = Material.HAY_BLOCK;
-                break;
-            case MOB_GRINDER:
-                material = Material.REDSTONE_BLOCK;
-                break;
-            case SELL_STATION:
-                material = Material.EMERALD_BLOCK;
-                break;
-            default:
-                material = Material.STONE;
-                break;
-        }
+        // Bloc déclaré dans machines.yml pour ce type
+        MachineDefinition def = plugin.machines().getDefinition(type);
+        Material material = def != null ? def.blockMaterial() : Material.STONE;
         
         location.getBlock().setType(material);
         System.out.println("[SkyTycoon] Machine simple placée: " + material + " à " + location);
@@ -134,14 +115,9 @@ public class MachineSchematicManager {
      */
     public boolean isMachineLocation(Location location) {
         Block block = location.getBlock();
-        Material type = block.getType();
         
-        // Vérifier si le bloc correspond à un type de machine connu
-        return type == Material.COBBLESTONE || // BASIC_MINER
-               type == Material.OAK_LOG ||     // WOOD_CUTTER
-               type == Material.HAY_BLOCK ||   // CROP_FARM
-               type == Material.REDSTONE_BLOCK || // MOB_GRINDER
-               type == Material.EMERALD_BLOCK; // SELL_STATION
+        // Vérifier si le bloc correspond au bloc d'une machine déclarée
+        return plugin.machines().getDefinitionByBlock(block.getType()) != null;
     }
     
     /**
@@ -149,22 +125,8 @@ public class MachineSchematicManager {
      */
     public MachineType getMachineTypeFromBlock(Location location) {
         Block block = location.getBlock();
-        Material type = block.getType();
-        
-        switch (type) {
-            case COBBLESTONE:
-                return MachineType.BASIC_MINER;
-            case OAK_LOG:
-                return MachineType.WOOD_CUTTER;
-            case HAY_BLOCK:
-                return MachineType.CROP_FARM;
-            case REDSTONE_BLOCK:
-                return MachineType.MOB_GRINDER;
-            case EMERALD_BLOCK:
-                return MachineType.SELL_STATION;
-            default:
-                return null;
-        }
+        MachineDefinition def = plugin.machines().getDefinitionByBlock(block.getType());
+        return def != null ? def.type() : null;
     }
     
     /**
@@ -0,0 +1,114 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Material;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Stockage compact d'une machine: un compteur int par produit, indexé par un petit numéro de slot.
+ * Le slot 0 est toujours le produit principal de la machine; d'autres slots peuvent être ajoutés
+ * au chargement si le fichier contient d'autres matériaux. Aucun Integer n'est alloué.
+ * <p>
+ * Les compteurs sont atomiques: la production (thread de la région) et les retraits
+ * (thread du joueur sous Folia) se font par CAS, sans verrou et sans perte de mise à jour.
+ */
+public class MachineStorage {
+    public static final int MAIN_SLOT = 0;
+
+    // Ne changent de taille qu'au chargement, avant que la machine ne soit planifiée
+    private volatile Material[] materials;
+    private volatile AtomicIntegerArray amounts;
+
+    public MachineStorage(Material mainProduct) {
+        this.materials = new Material[] { mainProduct };
+        this.amounts = new AtomicIntegerArray(1);
+    }
+
+    /**
+     * Slot d'un matériau, ou -1 s'il n'est pas stocké par cette machine
+     */
+    public int slotOf(Material material) {
+        Material[] current = materials;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == material) return i;
+        }
+        return -1;
+    }
+
+    public int get(Material material) {
+        int slot = slotOf(material);
+        return slot >= 0 ? amounts.get(slot) : 0;
+    }
+
+    public int getSlot(int slot) {
+        return amounts.get(slot);
+    }
+
+    /**
+     * Ajoute la production de plusieurs cycles tant que le stock est sous la limite:
+     * chaque cycle n'a lieu que si le stock est encore sous cap (le dernier peut la dépasser).
+     * @return le nombre de cycles effectivement stockés
+     */
+    public int addCycles(int slot, long cycles, int yield, int cap) {
+        AtomicIntegerArray current = amounts;
+        while (true) {
+            int stored = current.get(slot);
+            if (stored >= cap) return 0;
+            long untilFull = ((long) cap - stored + yield - 1) / yield;
+            int produced = (int) Math.min(cycles, untilFull);
+            if (current.compareAndSet(slot, stored, stored + produced * yield)) {
+                return produced;
+            }
+        }
+    }
+
+    /**
+     * Retire au plus amount items d'un matériau
+     * @return la quantité réellement retirée
+     */
+    public int take(Material material, int amount) {
+        int slot = slotOf(material);
+        if (slot < 0 || amount <= 0) return 0;
+        AtomicIntegerArray current = amounts;
+        while (true) {
+            int stored = current.get(slot);
+            int taken = Math.min(amount, stored);
+            if (taken <= 0) return 0;
+            if (current.compareAndSet(slot, stored, stored - taken)) {
+                return taken;
+            }
+        }
+    }
+
+    /**
+     * Fixe la quantité d'un matériau, en lui créant un slot si nécessaire (chargement)
+     */
+    public synchronized void set(Material material, int amount) {
+        int slot = slotOf(material);
+        if (slot < 0) {
+            slot = materials.length;
+            AtomicIntegerArray grown = new AtomicIntegerArray(slot + 1);
+            for (int i = 0; i < slot; i++) {
+                grown.set(i, amounts.get(i));
+            }
+            Material[] grownMaterials = Arrays.copyOf(materials, slot + 1);
+            grownMaterials[slot] = material;
+            amounts = grown;
+            materials = grownMaterials;
+        }
+        amounts.set(slot, amount);
+    }
+
+    /**
+     * Parcourt tous les slots (matériau, quantité), sans boxing
+     */
+    public void forEach(ObjIntConsumer<Material> consumer) {
+        Material[] currentMaterials = materials;
+        AtomicIntegerArray currentAmounts = amounts;
+        for (int i = 0; i < currentMaterials.length; i++) {
+            consumer.accept(currentMaterials[i], currentAmounts.get(i));
+        }
+    }
+}
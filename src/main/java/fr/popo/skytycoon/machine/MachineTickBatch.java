@@ -0,0 +1,186 @@
+package fr.popo.skytycoon.machine;
+
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Regroupe toutes les machines d'une même section de région Folia.
+ * Une seule tâche planifiée par section fait tourner toutes ses machines,
+ * le coût du scheduler dépend donc du nombre de sections et non du nombre de machines.
+ * <p>
+ * Les machines sont rangées dans une file de priorité selon leur prochain réveil:
+ * une machine ne tourne que lorsqu'elle doit produire ou que sa barre de progression change d'étape.
+ * Une machine en sommeil ou garée (stockage plein) sort de la file et n'y revient
+ * que lorsqu'elle est réveillée (voir wake).
+ */
+public class MachineTickBatch {
+    /**
+     * Taille d'une section en blocs (2^8 = 256 blocs = 16 chunks).
+     * Folia ne découpe jamais une section entre deux régions (grid-exponent: 4 par défaut).
+     */
+    public static final int SECTION_SHIFT = 8;
+    /** Période de la tâche en ticks serveur (une "tick machine") */
+    public static final long PERIOD = 5L;
+
+    public record Key(UUID world, int x, int z) {
+        public static Key of(Location location) {
+            return new Key(location.getWorld().getUID(),
+                location.getBlockX() >> SECTION_SHIFT, location.getBlockZ() >> SECTION_SHIFT);
+        }
+    }
+
+    private final MachineManager manager;
+    private final Key key;
+    private final Location anchor;
+    // File uniquement modifiée par le thread de la région
+    private final PriorityQueue<MachineRuntime> queue = new PriorityQueue<>();
+    private int attachedCount;
+    private volatile long clock;
+    // Ajouts/retraits venant d'autres threads, appliqués au début du prochain passage
+    private final Queue<MachineRuntime> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Queue<MachineRuntime> pendingRemovals = new ConcurrentLinkedQueue<>();
+    private final Queue<MachineRuntime> pendingWakes = new ConcurrentLinkedQueue<>();
+    // Hologrammes modifiés depuis le dernier passage, envoyés une seule fois à la fin du passage
+    private final Queue<MachineHologram> dirtyHolograms = new ConcurrentLinkedQueue<>();
+    private final EffectScheduler effects;
+    private ScheduledTask task;
+    private volatile boolean retired;
+
+    MachineTickBatch(MachineManager manager, Key key, Location anchor) {
+        this.manager = manager;
+        this.key = key;
+        this.anchor = anchor.clone();
+        this.effects = new EffectScheduler(manager);
+    }
+
+    public Key key() { return key; }
+
+    long clock() { return clock; }
+
+    EffectScheduler effects() { return effects; }
+
+    /**
+     * Ajoute une machine au lot. Appelé sous le verrou de la map des lots du MachineManager.
+     */
+    void add(MachineRuntime runtime) {
+        pendingAdds.offer(runtime);
+        if (task == null) {
+            task = Bukkit.getRegionScheduler().runAtFixedRate(manager.plugin(), anchor,
+                scheduledTask -> tick(), 1L, PERIOD);
+        }
+    }
+
+    void remove(MachineRuntime runtime) {
+        runtime.markRemoved();
+        pendingRemovals.offer(runtime);
+    }
+
+    /**
+     * Remet une machine dans la file au prochain passage du lot (si elle n'est ni endormie ni garée).
+     * Ce passage règle d'un coup la production accumulée entre-temps.
+     */
+    void wake(MachineRuntime runtime) {
+        pendingWakes.offer(runtime);
+    }
+
+    /**
+     * Programme l'envoi d'un hologramme modifié à la fin du prochain passage
+     */
+    void queueHologram(MachineHologram hologram) {
+        dirtyHolograms.offer(hologram);
+    }
+
+    /**
+     * Vrai si le lot n'a plus aucune machine ni ajout en attente
+     */
+    boolean isIdle() {
+        return attachedCount == 0 && pendingAdds.isEmpty();
+    }
+
+    void cancel() {
+        retired = true;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public int size() {
+        return attachedCount + pendingAdds.size();
+    }
+
+    private void tick() {
+        if (retired) return;
+        clock++;
+        MachineRuntime runtime;
+        while ((runtime = pendingAdds.poll()) != null) {
+            if (runtime.isRemoved()) continue;
+            // Premier passage au tick courant, comme l'ancienne tâche par machine
+            runtime.attach(clock);
+            attachedCount++;
+            if (!runtime.isDormant() && !runtime.isParked()) {
+                runtime.queued = true;
+                queue.offer(runtime);
+            }
+        }
+        while ((runtime = pendingRemovals.poll()) != null) {
+            // L'entrée dans la file est ignorée lorsqu'elle ressort
+            if (runtime.isAttached()) attachedCount--;
+        }
+        while ((runtime = pendingWakes.poll()) != null) {
+            if (!runtime.isAttached() || runtime.isRemoved() || runtime.isDormant()
+                || runtime.isParked() || runtime.queued) continue;
+            runtime.wakeAt = clock;
+            runtime.queued = true;
+            queue.offer(runtime);
+        }
+        if (attachedCount == 0) {
+            queue.clear();
+            manager.retireBatch(this);
+            return;
+        }
+        // Seules les machines dont le réveil est dû sont traitées
+        MachineRuntime head;
+        while ((head = queue.peek()) != null && head.wakeAt <= clock) {
+            queue.poll();
+            head.queued = false;
+            // Machine retirée, endormie ou garée: elle quitte la file sans rien coûter
+            if (head.isRemoved() || head.isDormant() || head.isParked()) continue;
+            long next;
+            try {
+                next = manager.tickMachine(head, clock + head.offset()) - head.offset();
+            } catch (Exception e) {
+                // Une machine en erreur ne doit pas bloquer les autres machines du lot
+                manager.plugin().getLogger().warning("Erreur tick machine " + head.machine().def().id() + ": " + e.getMessage());
+                next = clock + 1;
+            }
+            // Stockage plein pendant ce passage: la machine reste hors de la file
+            if (head.isParked()) continue;
+            head.wakeAt = Math.max(clock + 1, next);
+            head.queued = true;
+            queue.offer(head);
+        }
+        // Effets du passage: regroupés, filtrés et plafonnés en une fois
+        effects.flush();
+        // Hologrammes: au plus un text() par hologramme et par passage, seulement s'il a changé
+        // et si un joueur est à portée (sinon il est retenu jusqu'à son arrivée)
+        MachineHologram hologram;
+        List<MachineHologram> deferred = null;
+        while ((hologram = dirtyHolograms.poll()) != null) {
+            if (manager.hologramManager().flush(hologram, clock)) {
+                if (deferred == null) deferred = new ArrayList<>();
+                deferred.add(hologram);
+            }
+        }
+        // Détail moyen rafraîchi trop récemment: retenté aux passages suivants
+        if (deferred != null) dirtyHolograms.addAll(deferred);
+    }
+}
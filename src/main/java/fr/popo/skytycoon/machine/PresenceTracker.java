@@ -0,0 +1,90 @@
+package fr.popo.skytycoon.machine;
+
+import org.bukkit.Location;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Suit quels chunks ont au moins un joueur à proximité.
+ * Chaque joueur "observe" un carré de chunks autour du sien; les compteurs ne sont mis à jour
+ * que lorsqu'un joueur change de chunk, et un rappel signale les chunks qui gagnent
+ * leur premier observateur ou perdent le dernier.
+ */
+public class PresenceTracker {
+    private final Map<ChunkPos, Integer> viewers = new ConcurrentHashMap<>();
+    private final Map<UUID, ChunkPos> playerChunks = new ConcurrentHashMap<>();
+    private final int radius;
+    private final BiConsumer<ChunkPos, Boolean> onChange;
+
+    /**
+     * @param radiusBlocks rayon d'observation en blocs
+     * @param onChange appelé avec (chunk, observé) lors d'un changement d'état, depuis le thread du joueur
+     */
+    public PresenceTracker(int radiusBlocks, BiConsumer<ChunkPos, Boolean> onChange) {
+        this.radius = Math.max(0, (radiusBlocks + 15) >> 4);
+        this.onChange = onChange;
+    }
+
+    /**
+     * Met à jour la position d'un joueur (null pour le retirer)
+     */
+    public void update(UUID player, Location location) {
+        ChunkPos next = location != null && location.getWorld() != null ? ChunkPos.of(location) : null;
+        ChunkPos previous = next != null ? playerChunks.put(player, next) : playerChunks.remove(player);
+        if (Objects.equals(previous, next)) return;
+        // Seuls les chunks qui entrent ou sortent du carré changent: la zone commune garde son compteur
+        if (next != null) adjust(next, 1, previous);
+        if (previous != null) adjust(previous, -1, next);
+    }
+
+    public void remove(UUID player) {
+        update(player, null);
+    }
+
+    /**
+     * Vrai si au moins un joueur se trouve dans le rayon d'observation de ce chunk
+     */
+    public boolean isObserved(ChunkPos pos) {
+        return viewers.containsKey(pos);
+    }
+
+    /**
+     * Vrai si le joueur a changé de chunk entre les deux positions
+     */
+    public static boolean changedChunk(Location from, Location to) {
+        return to != null && (from.getWorld() != to.getWorld()
+            || from.getBlockX() >> 4 != to.getBlockX() >> 4
+            || from.getBlockZ() >> 4 != to.getBlockZ() >> 4);
+    }
+
+    public void clear() {
+        viewers.clear();
+        playerChunks.clear();
+    }
+
+    /**
+     * Ajoute delta aux chunks du carré autour de center qui ne sont pas dans celui autour de other
+     */
+    private void adjust(ChunkPos center, int delta, ChunkPos other) {
+        boolean overlap = other != null && other.world().equals(center.world());
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dz = -radius; dz <= radius; dz++) {
+                int x = center.x() + dx;
+                int z = center.z() + dz;
+                if (overlap && Math.abs(x - other.x()) <= radius && Math.abs(z - other.z()) <= radius) continue;
+                ChunkPos pos = new ChunkPos(center.world(), x, z);
+                // merge atomique par chunk: la valeur est retirée quand elle retombe à 0
+                Integer count = viewers.merge(pos, delta, (a, b) -> a + b == 0 ? null : a + b);
+                if (count == null) {
+                    onChange.accept(pos, false);
+                } else if (delta > 0 && count == 1) {
+                    onChange.accept(pos, true);
+                }
+            }
+        }
+    }
+}
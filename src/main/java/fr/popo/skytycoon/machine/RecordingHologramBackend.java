@@ -0,0 +1,100 @@
+package fr.popo.skytycoon.machine;
+
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Support en mémoire: aucun affichage n'est créé dans le monde, chaque appel est compté.
+ * Sert aux mesures (nombre de créations et d'écritures de texte sans entités), pas à un serveur ouvert:
+ * seuls les CAPACITY derniers appels sont gardés en détail.
+ */
+public class RecordingHologramBackend implements HologramBackend {
+
+    public enum Action { CREATE, TEXT, REMOVE }
+
+    public record Event(Action action, long displayId, Location location, Component text) {}
+
+    /** Nombre d'appels gardés en détail; les plus anciens sont oubliés (les compteurs restent exacts) */
+    public static final int CAPACITY = 4096;
+
+    private final AtomicLong nextId = new AtomicLong();
+    private final ArrayDeque<Event> events = new ArrayDeque<>(CAPACITY);
+    private final AtomicLongArray counts = new AtomicLongArray(Action.values().length);
+
+    @Override
+    public Display create(Location machineLocation, Component text) {
+        RecordedDisplay display = new RecordedDisplay(nextId.incrementAndGet(), machineLocation.clone());
+        record(new Event(Action.CREATE, display.id, display.location, text));
+        return display;
+    }
+
+    @Override
+    public boolean isTransient() {
+        return false;
+    }
+
+    private void record(Event event) {
+        counts.incrementAndGet(event.action().ordinal());
+        synchronized (events) {
+            if (events.size() == CAPACITY) events.pollFirst();
+            events.addLast(event);
+        }
+    }
+
+    /**
+     * Derniers appels enregistrés depuis le dernier clear (au plus CAPACITY), dans l'ordre
+     */
+    public List<Event> events() {
+        synchronized (events) {
+            return List.copyOf(events);
+        }
+    }
+
+    /**
+     * Nombre d'appels d'un type depuis le dernier clear
+     */
+    public long count(Action action) {
+        return counts.get(action.ordinal());
+    }
+
+    public void clear() {
+        synchronized (events) {
+            events.clear();
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    private final class RecordedDisplay implements Display {
+        private final long id;
+        private final Location location;
+        private volatile boolean valid = true;
+
+        RecordedDisplay(long id, Location location) {
+            this.id = id;
+            this.location = location;
+        }
+
+        @Override
+        public boolean isValid() {
+            return valid;
+        }
+
+        @Override
+        public void text(Component text) {
+            record(new Event(Action.TEXT, id, location, text));
+        }
+
+        @Override
+        public void remove() {
+            valid = false;
+            record(new Event(Action.REMOVE, id, location, null));
+        }
+    }
+}
@@ -1,25 +1,64 @@
 package fr.popo.skytycoon.player;
 
 import fr.popo.skytycoon.SkyTycoonPlugin;
+import fr.popo.skytycoon.data.DataWriter;
+import fr.popo.skytycoon.data.FileSnapshot;
+import fr.popo.skytycoon.data.IslandRecord;
+import fr.popo.skytycoon.data.IslandShardStore;
+import fr.popo.skytycoon.data.MachineJournal;
+import fr.popo.skytycoon.data.MachineRecord;
 import fr.popo.skytycoon.schematic.SchematicLoader;
 import fr.popo.skytycoon.world.WorldManager;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.World;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Gestionnaire des îles utilisant le WorldManager pour la création du monde
+ * Gestionnaire des îles utilisant le WorldManager pour la création du monde.
+ * <p>
+ * Chaque île est enregistrée avec ses machines dans son propre fichier (data/islands/&lt;uuid&gt;.bin),
+ * lu seulement quand l'île sert (connexion du propriétaire, chunk de l'île chargé) et libéré
+ * lorsqu'elle reste inactive. Un petit index garde la position de toutes les îles pour l'allocation.
  */
 public class IslandManager {
     private final SkyTycoonPlugin plugin;
     private final WorldManager worldManager;
     private final SchematicLoader schematicLoader;
+    // Îles dont le fichier est chargé
     private final Map<UUID, Island> islands = new ConcurrentHashMap<>();
+    // Index de toutes les îles et propriétaire par centre d'île
+    private final Map<UUID, IslandShardStore.IndexEntry> index = new ConcurrentHashMap<>();
+    private final Map<Long, UUID> ownersByCenter = new ConcurrentHashMap<>();
+    private volatile boolean indexDirty;
+    // Fichiers d'île chargés (ou inexistants), chargements en attente et dernière activité
+    private final Set<UUID> loadedShards = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> pendingLoads = ConcurrentHashMap.newKeySet();
+    private final Map<UUID, Long> lastActive = new ConcurrentHashMap<>();
+    // Îles modifiées depuis le dernier flush
+    private final Set<UUID> dirtyIslands = ConcurrentHashMap.newKeySet();
+    // Entrées du journal non rejouées au démarrage, appliquées au chargement de l'île,
+    // et îles concernées prises dans le passage d'écriture en cours
+    private final Map<UUID, List<MachineJournal.Entry>> pendingReplay = new ConcurrentHashMap<>();
+    private final Set<UUID> replayWritten = ConcurrentHashMap.newKeySet();
+    private final Path dataFolder;
+    private ScheduledTask coldTask;
     private final int spacing = 512; // distance entre centres  
     private final int islandSize = 64; // rayon carré utilisable
     private int allocationIndex = 0; // simple incrément pour grille
@@ -28,6 +67,22 @@ public class IslandManager {
         this.plugin = plugin;
         this.worldManager = worldManager;
         this.schematicLoader = new SchematicLoader(plugin);
+        this.dataFolder = plugin.getDataFolder().toPath();
+        plugin.getDataWriter().register(this::snapshotShards);
+        plugin.getDataWriter().addCheckpoint(new DataWriter.Checkpoint() {
+            @Override
+            public void begin() {}
+
+            @Override
+            public void written() {
+                for (UUID owner : replayWritten) {
+                    pendingReplay.remove(owner);
+                }
+                boolean released = !replayWritten.isEmpty() && pendingReplay.isEmpty();
+                replayWritten.clear();
+                if (released) plugin.getMachineJournal().releaseRetained();
+            }
+        });
     }
 
     public Island getOrCreate(UUID owner) {
@@ -35,7 +90,9 @@ public class IslandManager {
     }
     
     public Island getOrCreate(UUID owner, org.bukkit.entity.Player playerToTeleport) {
-        Island existing = islands.get(owner);
+        // Île existante pas encore chargée: surtout ne pas en allouer une seconde
+        if (isLoading(owner)) return null;
+        Island existing = getIsland(owner);
         if (existing != null) return existing;
         
         // Vérifier que le monde est disponible
@@ -46,15 +103,33 @@ public class IslandManager {
         
         Island created = allocateIsland(owner);
         islands.put(owner, created);
+        putIndex(indexEntry(created));
+        indexDirty = true;
         generateStarterPlatform(created, playerToTeleport);
-        // Sauvegarde intelligente après création
-        saveIslandsToFile();
+        // Enregistrée au prochain flush
+        markDirty(owner);
+        // Machines éventuelles du joueur sans île, et suivi d'inactivité
+        requestLoad(owner);
         return created;
     }
 
+    /**
+     * Île d'un joueur, null si elle n'existe pas ou n'est pas encore chargée (voir isLoading).
+     * Aucune lecture de fichier ici (threads de jeu): un fichier pas encore chargé est demandé au DataWriter.
+     */
     public Island getIsland(UUID owner) {
+        if (!loadedShards.contains(owner)) requestLoad(owner);
         return islands.get(owner);
     }
+
+    /**
+     * Vrai si le joueur a une île dont le fichier n'est pas encore chargé (son chargement est alors demandé)
+     */
+    public boolean isLoading(UUID owner) {
+        if (loadedShards.contains(owner) || !index.containsKey(owner)) return false;
+        requestLoad(owner);
+        return true;
+    }
     
     public SchematicLoader getSchematicLoader() {
         return schematicLoader;
@@ -131,7 +206,7 @@ public class IslandManager {
      * Supprime une île et nettoie la zone
      */
     public boolean disbandIsland(UUID owner) {
-        Island island = islands.get(owner);
+        Island island = getIsland(owner);
         if (island == null) {
             return false;
         }
@@ -144,8 +219,10 @@ public class IslandManager {
         
         // Supprimer l'île de la map
         islands.remove(owner);
-        // Sauvegarde intelligente après suppression
-        saveIslandsToFile();
+        removeIndex(owner);
+        indexDirty = true;
+        // Retirée du fichier au prochain flush
+        markDirty(owner);
         // Nettoyer la zone de l'île
         Location spawn = island.spawnLocation(world);
         if (spawn != null) {
@@ -175,44 +252,234 @@ public class IslandManager {
     }
 
     /**
-     * Sauvegarde les îles dans un fichier YAML
+     * Marque une île comme modifiée (création, suppression, stockage): son fichier est réécrit à la prochaine écriture
+     */
+    public void markDirty(UUID owner) {
+        dirtyIslands.add(owner);
+        plugin.getDataWriter().request();
+    }
+
+    /**
+     * Sauvegarde complète (arrêt du serveur): toutes les îles chargées sont réécrites par le DataWriter
      */
     public void saveIslandsToFile() {
-        java.io.File file = new java.io.File(plugin.getDataFolder(), "islands_data.yml");
-        org.bukkit.configuration.file.YamlConfiguration yaml = new org.bukkit.configuration.file.YamlConfiguration();
-        int i = 0;
-        for (Map.Entry<UUID, Island> entry : islands.entrySet()) {
-            Island island = entry.getValue();
-            String key = "islands." + i;
-            yaml.set(key + ".owner", island.owner().toString());
-            yaml.set(key + ".world", island.worldName());
-            yaml.set(key + ".centerX", island.centerX());
-            yaml.set(key + ".centerZ", island.centerZ());
-            yaml.set(key + ".size", island.size());
-            // Stockage
-            Map<String, Integer> storageMap = new java.util.HashMap<>();
-            for (Map.Entry<org.bukkit.Material, Integer> st : island.getStorage().entrySet()) {
-                storageMap.put(st.getKey().name(), st.getValue());
-            }
-            yaml.set(key + ".storage", storageMap);
-            i++;
+        dirtyIslands.addAll(islands.keySet());
+        plugin.getDataWriter().request();
+    }
+
+    /**
+     * Index des îles (positions de toutes les îles, chargées ou non) inscrit dans les tables de recherche
+     */
+    private void putIndex(IslandShardStore.IndexEntry entry) {
+        index.put(entry.owner(), entry);
+        ownersByCenter.put(centerKey(entry.centerX(), entry.centerZ()), entry.owner());
+    }
+
+    private void removeIndex(UUID owner) {
+        IslandShardStore.IndexEntry entry = index.remove(owner);
+        if (entry != null) ownersByCenter.remove(centerKey(entry.centerX(), entry.centerZ()));
+    }
+
+    private static long centerKey(int centerX, int centerZ) {
+        return ((long) centerX << 32) | (centerZ & 0xFFFFFFFFL);
+    }
+
+    private static IslandShardStore.IndexEntry indexEntry(Island island) {
+        return new IslandShardStore.IndexEntry(island.owner(), island.worldName(),
+            island.centerX(), island.centerZ(), island.size());
+    }
+
+    /**
+     * Chargement au démarrage: lecture de l'index des îles (ou conversion des anciens fichiers globaux),
+     * puis chargement des îles des joueurs déjà connectés. Les autres fichiers d'île ne sont lus
+     * qu'à la connexion de leur propriétaire ou au chargement d'un chunk de l'île.
+     * @return false si la conversion des anciens fichiers a échoué: rien n'est chargé ni écrit,
+     *         et la conversion est refaite au prochain démarrage
+     */
+    public boolean loadIslandsFromFile() {
+        Path indexFile = IslandShardStore.indexPath(dataFolder);
+        List<IslandShardStore.IndexEntry> entries;
+        if (Files.exists(indexFile)) {
+            try {
+                entries = IslandShardStore.readIndex(indexFile);
+            } catch (IOException e) {
+                plugin.getLogger().severe("Index des îles illisible (" + e.getMessage() + "), reconstruction depuis les fichiers d'île");
+                entries = rebuildIndex();
+                indexDirty = true;
+            }
+        } else {
+            try {
+                entries = migrateLegacyFiles();
+            } catch (IOException e) {
+                // Surtout pas d'index vide: il empêcherait toute nouvelle conversion et l'allocation
+                // repartirait de zéro, par-dessus les îles existantes
+                plugin.getLogger().severe("Conversion des anciennes données impossible: " + e.getMessage());
+                return false;
+            }
+        }
+        int next = 0;
+        for (IslandShardStore.IndexEntry entry : entries) {
+            putIndex(entry);
+            // Reprendre l'allocation après la dernière case de la grille occupée
+            int cell = (entry.centerZ() / spacing) * 1000 + entry.centerX() / spacing;
+            next = Math.max(next, cell + 1);
+        }
+        allocationIndex = next;
+        plugin.getLogger().info("Index des îles chargé: " + index.size() + " îles");
+        recoverJournal();
+        // Rechargement du plugin: joueurs déjà connectés
+        for (org.bukkit.entity.Player player : Bukkit.getOnlinePlayers()) {
+            requestLoad(player.getUniqueId());
+        }
+        long interval = Math.max(10, plugin.getConfig().getLong("persistence.shard-check-interval", 60));
+        coldTask = Bukkit.getAsyncScheduler().runAtFixedRate(plugin, task -> releaseIdleShards(),
+            interval, interval, TimeUnit.SECONDS);
+        return true;
+    }
+
+    /**
+     * Rejoue le journal des machines laissé par un arrêt brutal sur les fichiers d'île concernés,
+     * puis démarre un journal vide. Les entrées d'un fichier qui ne peut pas être réécrit sont
+     * appliquées en mémoire au chargement de l'île et gardées dans le journal jusqu'à ce que
+     * l'île soit écrite (rejouées de nouveau si l'arrêt survient avant).
+     */
+    private void recoverJournal() {
+        MachineJournal journal = plugin.getMachineJournal();
+        List<MachineJournal.Entry> keep = new ArrayList<>();
+        try {
+            List<MachineJournal.Entry> entries = journal.readAll();
+            if (!entries.isEmpty()) {
+                Map<UUID, List<MachineJournal.Entry>> byOwner = new HashMap<>();
+                for (MachineJournal.Entry entry : entries) {
+                    byOwner.computeIfAbsent(entry.record().owner(), o -> new ArrayList<>()).add(entry);
+                }
+                for (Map.Entry<UUID, List<MachineJournal.Entry>> owner : byOwner.entrySet()) {
+                    if (!replayShard(owner.getKey(), owner.getValue())) {
+                        pendingReplay.put(owner.getKey(), owner.getValue());
+                        keep.addAll(owner.getValue());
+                    }
+                }
+                plugin.getLogger().info("Journal des machines rejoué: " + entries.size() + " entrées, "
+                    + byOwner.size() + " fichiers d'île");
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Journal des machines illisible, mis de côté: " + e.getMessage());
+            try {
+                journal.quarantine();
+            } catch (IOException moveFailed) {
+                plugin.getLogger().severe("Impossible de mettre le journal de côté: " + moveFailed.getMessage());
+            }
+        }
+        try {
+            journal.start(keep);
+        } catch (IOException e) {
+            plugin.getLogger().severe("Impossible de démarrer le journal des machines: " + e.getMessage());
+        }
+    }
+
+    private boolean replayShard(UUID owner, List<MachineJournal.Entry> entries) {
+        Path file = IslandShardStore.shardPath(dataFolder, owner);
+        try {
+            IslandShardStore.Shard shard = Files.exists(file)
+                ? IslandShardStore.readShard(file) : new IslandShardStore.Shard(null, List.of());
+            List<MachineRecord> machines = MachineJournal.replay(shard.machines(), entries);
+            if (shard.island() == null && machines.isEmpty()) {
+                Files.deleteIfExists(file);
+            } else {
+                DataWriter.writeAtomically(file, IslandShardStore.encodeShard(shard.island(), machines));
+            }
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("Rejeu du journal impossible pour " + file.getFileName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Index reconstruit en lisant chaque fichier d'île (index absent ou corrompu)
+     */
+    private List<IslandShardStore.IndexEntry> rebuildIndex() {
+        List<IslandShardStore.IndexEntry> entries = new ArrayList<>();
+        Path directory = IslandShardStore.directory(dataFolder);
+        if (!Files.isDirectory(directory)) return entries;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin")) {
+            for (Path file : files) {
+                if (file.equals(IslandShardStore.indexPath(dataFolder))) continue;
+                try {
+                    IslandRecord island = IslandShardStore.readShard(file).island();
+                    if (island != null) {
+                        entries.add(new IslandShardStore.IndexEntry(island.owner(), island.world(),
+                            island.centerX(), island.centerZ(), island.size()));
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Fichier d'île ignoré " + file.getFileName() + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Impossible de parcourir " + directory + ": " + e.getMessage());
+        }
+        return entries;
+    }
+
+    /**
+     * Conversion des anciens fichiers globaux (islands_data.yml et machines.bin / machines_data.yml)
+     * en un fichier par île et un index. Les anciens fichiers sont renommés en .migrated une fois
+     * les nouveaux écrits.
+     */
+    private List<IslandShardStore.IndexEntry> migrateLegacyFiles() throws IOException {
+        java.io.File legacyIslands = new java.io.File(plugin.getDataFolder(), "islands_data.yml");
+        List<MachineRecord> legacyMachines = plugin.machines().readLegacyMachines();
+        if (!legacyIslands.exists() && legacyMachines == null) return new ArrayList<>();
+
+        Map<UUID, IslandRecord> islandsByOwner = new HashMap<>();
+        if (legacyIslands.exists()) {
+            for (IslandRecord island : readYamlIslands(legacyIslands)) {
+                islandsByOwner.put(island.owner(), island);
+            }
+        }
+        Map<UUID, List<MachineRecord>> machinesByOwner = new HashMap<>();
+        if (legacyMachines != null) {
+            for (MachineRecord record : legacyMachines) {
+                machinesByOwner.computeIfAbsent(record.owner(), o -> new ArrayList<>()).add(record);
+            }
+        }
+        Set<UUID> owners = new HashSet<>(islandsByOwner.keySet());
+        owners.addAll(machinesByOwner.keySet());
+        for (UUID owner : owners) {
+            DataWriter.writeAtomically(IslandShardStore.shardPath(dataFolder, owner),
+                IslandShardStore.encodeShard(islandsByOwner.get(owner), machinesByOwner.getOrDefault(owner, List.of())));
         }
+        List<IslandShardStore.IndexEntry> entries = new ArrayList<>();
+        for (IslandRecord island : islandsByOwner.values()) {
+            entries.add(new IslandShardStore.IndexEntry(island.owner(), island.world(),
+                island.centerX(), island.centerZ(), island.size()));
+        }
+        // L'index est écrit en dernier: tant qu'il manque, la conversion est refaite au prochain démarrage
+        DataWriter.writeAtomically(IslandShardStore.indexPath(dataFolder), IslandShardStore.encodeIndex(entries));
+
+        // Conversion terminée: un renommage en échec laisse seulement les anciens fichiers en place
         try {
-            yaml.save(file);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Erreur lors de la sauvegarde des îles: " + e.getMessage());
+            plugin.machines().retireLegacyMachines();
+            if (legacyIslands.exists()) {
+                Files.move(legacyIslands.toPath(), legacyIslands.toPath().resolveSibling("islands_data.yml.migrated"),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Anciens fichiers de données non renommés (déjà convertis, à supprimer à la main): " + e.getMessage());
         }
+        plugin.getLogger().info("Données converties en fichiers d'île: " + islandsByOwner.size() + " îles, "
+            + (legacyMachines != null ? legacyMachines.size() : 0) + " machines");
+        return entries;
     }
 
     /**
-     * Charge les îles depuis un fichier YAML
+     * Lecture de l'ancien format islands_data.yml
      */
-    public void loadIslandsFromFile() {
-        java.io.File file = new java.io.File(plugin.getDataFolder(), "islands_data.yml");
-        if (!file.exists()) return;
+    private List<IslandRecord> readYamlIslands(java.io.File file) {
+        List<IslandRecord> records = new ArrayList<>();
         org.bukkit.configuration.file.YamlConfiguration yaml = org.bukkit.configuration.file.YamlConfiguration.loadConfiguration(file);
         org.bukkit.configuration.ConfigurationSection section = yaml.getConfigurationSection("islands");
-        if (section == null) return;
+        if (section == null) return records;
         for (String key : section.getKeys(false)) {
             String ownerStr = section.getString(key + ".owner");
             String worldName = section.getString(key + ".world");
@@ -220,22 +487,192 @@ public class IslandManager {
             int centerZ = section.getInt(key + ".centerZ");
             int size = section.getInt(key + ".size", 64);
             org.bukkit.configuration.ConfigurationSection storageSection = section.getConfigurationSection(key + ".storage");
-            Map<String, Object> storageMap = storageSection != null ? storageSection.getValues(false) : new java.util.HashMap<>();
             if (ownerStr == null || worldName == null) continue;
-            Island island = new Island(java.util.UUID.fromString(ownerStr), worldName, centerX, centerZ, size);
-            // Restaurer le stockage
-            for (Map.Entry<String, Object> st : storageMap.entrySet()) {
+            Map<String, Integer> storage = new HashMap<>();
+            if (storageSection != null) {
+                for (Map.Entry<String, Object> st : storageSection.getValues(false).entrySet()) {
+                    try {
+                        storage.put(st.getKey(), Integer.parseInt(st.getValue().toString()));
+                    } catch (NumberFormatException ignored) {}
+                }
+            }
+            try {
+                records.add(new IslandRecord(UUID.fromString(ownerStr), worldName, centerX, centerZ, size, storage));
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("Île ignorée (propriétaire invalide): " + ownerStr);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Demande le chargement du fichier d'une île sur le thread du DataWriter (connexion du propriétaire)
+     */
+    public void requestLoad(UUID owner) {
+        if (loadedShards.contains(owner) || !pendingLoads.add(owner)) return;
+        plugin.getDataWriter().execute(() -> {
+            try {
+                loadShard(owner);
+            } finally {
+                pendingLoads.remove(owner);
+            }
+        });
+    }
+
+    /**
+     * Chunk chargé dans le monde SkyTycoon: charge le fichier de l'île dont la case de grille le contient
+     */
+    public void onChunkLoad(org.bukkit.Chunk chunk) {
+        if (!chunk.getWorld().getName().equals(worldManager.getWorldName())) return;
+        int centerX = Math.round(((chunk.getX() << 4) + 8) / (float) spacing) * spacing;
+        int centerZ = Math.round(((chunk.getZ() << 4) + 8) / (float) spacing) * spacing;
+        UUID owner = ownersByCenter.get(centerKey(centerX, centerZ));
+        if (owner != null) requestLoad(owner);
+    }
+
+    /**
+     * Lit le fichier d'une île s'il ne l'est pas déjà: île et machines redeviennent actives.
+     * Bloquant; appelé uniquement sur le thread du DataWriter (voir requestLoad).
+     */
+    private synchronized void loadShard(UUID owner) {
+        if (loadedShards.contains(owner)) return;
+        Path file = IslandShardStore.shardPath(dataFolder, owner);
+        List<MachineRecord> machines = List.of();
+        if (Files.exists(file)) {
+            try {
+                IslandShardStore.Shard shard = IslandShardStore.readShard(file);
+                if (shard.island() != null) islands.put(owner, toIsland(shard.island()));
+                machines = shard.machines();
+            } catch (IOException e) {
+                plugin.getLogger().severe("Fichier d'île illisible " + file.getFileName() + ": " + e.getMessage());
+                // Mis de côté pour ne pas être écrasé par la prochaine écriture
                 try {
-                    org.bukkit.Material mat = org.bukkit.Material.valueOf(st.getKey());
-                    int amount = Integer.parseInt(st.getValue().toString());
-                    island.getStorage().put(mat, amount);
-                } catch (Exception ignored) {}
+                    Files.move(file, file.resolveSibling(file.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ignored) {}
             }
-            islands.put(island.owner(), island);
         }
+        // Entrées du journal qui n'avaient pas pu être rejouées sur le fichier au démarrage
+        List<MachineJournal.Entry> pending = pendingReplay.get(owner);
+        if (pending != null) {
+            machines = MachineJournal.replay(machines, pending);
+            dirtyIslands.add(owner);
+            plugin.getDataWriter().request();
+        }
+        plugin.machines().restoreAll(machines);
+        // Fichier absent ou illisible: l'île reste à sa place dans la grille, avec un stockage vide
+        IslandShardStore.IndexEntry entry = index.get(owner);
+        if (entry != null && !islands.containsKey(owner)) {
+            islands.put(owner, new Island(owner, entry.world(), entry.centerX(), entry.centerZ(), entry.size()));
+        }
+        loadedShards.add(owner);
+        lastActive.put(owner, System.currentTimeMillis());
+    }
+
+    /**
+     * Décharge les îles restées inactives (propriétaire déconnecté, aucune machine éveillée)
+     * plus de persistence.shard-idle secondes. Tâche asynchrone périodique.
+     */
+    private void releaseIdleShards() {
+        long now = System.currentTimeMillis();
+        long idle = Math.max(60, plugin.getConfig().getLong("persistence.shard-idle", 300)) * 1000L;
+        for (UUID owner : loadedShards) {
+            if (isActive(owner)) {
+                lastActive.put(owner, now);
+            } else if (now - lastActive.getOrDefault(owner, now) >= idle) {
+                plugin.getDataWriter().execute(() -> releaseShard(owner));
+            }
+        }
+    }
+
+    private boolean isActive(UUID owner) {
+        return Bukkit.getPlayer(owner) != null || plugin.machines().hasAwakeMachines(owner);
+    }
+
+    /**
+     * Écrit le fichier d'une île inactive puis retire l'île et ses machines de la mémoire.
+     * Si l'écriture échoue, tout est remis en place et la décharge sera retentée plus tard.
+     */
+    private synchronized void releaseShard(UUID owner) {
+        if (!loadedShards.contains(owner) || isActive(owner)) return;
+        List<MachineRecord> records = plugin.machines().unloadOwner(owner);
+        Island island = islands.remove(owner);
+        dirtyIslands.remove(owner);
+        loadedShards.remove(owner);
+        lastActive.remove(owner);
+        FileSnapshot snapshot = shardSnapshot(owner, island, records);
+        try {
+            if (snapshot.content() == null) {
+                Files.deleteIfExists(snapshot.file());
+            } else {
+                DataWriter.writeAtomically(snapshot.file(), snapshot.content());
+            }
+            if (pendingReplay.remove(owner) != null && pendingReplay.isEmpty()) {
+                plugin.getMachineJournal().releaseRetained();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Échec d'écriture de " + snapshot.file().getFileName() + ", île gardée en mémoire: " + e.getMessage());
+            if (island != null) islands.put(owner, island);
+            plugin.machines().restoreAll(records);
+            loadedShards.add(owner);
+            lastActive.put(owner, System.currentTimeMillis());
+            // Réécrit au prochain flush: le journal n'est vidé qu'une fois le fichier à jour
+            markDirty(owner);
+        }
+    }
+
+    /**
+     * Instantanés des fichiers d'île modifiés (île ou machines) et de l'index s'il a changé.
+     * Appelé par le thread du DataWriter.
+     */
+    private synchronized List<FileSnapshot> snapshotShards() {
+        Set<UUID> owners = new HashSet<>(dirtyIslands);
+        owners.addAll(plugin.machines().dirtyOwners());
+        List<FileSnapshot> snapshots = new ArrayList<>();
+        for (UUID owner : owners) {
+            dirtyIslands.remove(owner);
+            // Un fichier d'île n'est jamais réécrit sans avoir été lu: ses autres machines seraient perdues
+            loadShard(owner);
+            if (pendingReplay.containsKey(owner)) replayWritten.add(owner);
+            snapshots.add(shardSnapshot(owner, islands.get(owner), plugin.machines().recordsOf(owner)));
+        }
+        if (indexDirty) {
+            indexDirty = false;
+            snapshots.add(new FileSnapshot(IslandShardStore.indexPath(dataFolder),
+                IslandShardStore.encodeIndex(List.copyOf(index.values()))));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Contenu du fichier d'une île; sans île ni machine le fichier est supprimé
+     */
+    private FileSnapshot shardSnapshot(UUID owner, Island island, List<MachineRecord> machines) {
+        Path file = IslandShardStore.shardPath(dataFolder, owner);
+        if (island == null && machines.isEmpty()) return new FileSnapshot(file, null);
+        return new FileSnapshot(file, IslandShardStore.encodeShard(island != null ? toRecord(island) : null, machines));
+    }
+
+    private static IslandRecord toRecord(Island island) {
+        Map<String, Integer> storage = new HashMap<>();
+        for (Map.Entry<Material, Integer> st : island.getStorage().entrySet()) {
+            storage.put(st.getKey().name(), st.getValue());
+        }
+        return new IslandRecord(island.owner(), island.worldName(), island.centerX(), island.centerZ(), island.size(), storage);
+    }
+
+    private static Island toIsland(IslandRecord record) {
+        Island island = new Island(record.owner(), record.world(), record.centerX(), record.centerZ(), record.size());
+        for (Map.Entry<String, Integer> st : record.storage().entrySet()) {
+            Material material = Material.matchMaterial(st.getKey());
+            // getStorage() renvoie une copie: le stock chargé doit passer par addToStorage
+            if (material != null) island.addToStorage(material, st.getValue());
+        }
+        return island;
     }
 
     public void shutdown() {
+        if (coldTask != null) coldTask.cancel();
         islands.clear();
+        loadedShards.clear();
     }
 }